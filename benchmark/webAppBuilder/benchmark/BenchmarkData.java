@@ -0,0 +1,132 @@
+package webAppBuilder.benchmark;
+
+import java.util.*;
+import java.io.*;
+import webAppBuilder.FileHelper;
+
+/**
+ * Generates the inputs for the benchmarks: JavaScript and CSS source text which resembles hand-written
+ * code (so that the compressors have names to munge, whitespace and comments to strip, and rules to
+ * merge), and directory trees of source files to be listed, read, and combined.
+ */
+public class BenchmarkData {
+
+	/**
+	 * Generates JavaScript source of roughly the given size.
+	 *
+	 * @param size The size of the source to generate, in chars.
+	 * @param seed A number to vary the generated names by, so that different files have different contents.
+	 * @return The JavaScript source.
+	 */
+	public static String generateJavaScript( int size, int seed ) {
+		StringBuilder source = new StringBuilder( size + 512 );
+		for( int i = 0; source.length() < size; i++ ) {
+			String name = "Widget" + seed + "_" + i;
+			source.append( "/**\n * A " ).append( name ).append( ", which renders its items into an element.\n */\n" );
+			source.append( "var " ).append( name ).append( " = function( element, options ) {\n" );
+			source.append( "\tthis.element = element;\n" );
+			source.append( "\tthis.items = ( options && options.items ) || [];\n" );
+			source.append( "\tthis.title = \"" ).append( name ).append( " title\";\n" );
+			source.append( "};\n\n" );
+			source.append( name ).append( ".prototype.render = function() {\n" );
+			source.append( "\tvar html = [], itemCount = this.items.length;\n" );
+			source.append( "\tfor( var index = 0; index < itemCount; index++ ) {\n" );
+			source.append( "\t\tvar currentItem = this.items[ index ];\n" );
+			source.append( "\t\thtml.push( '<li class=\"item\">' + currentItem.label + '</li>' );  // one element per item\n" );
+			source.append( "\t}\n" );
+			source.append( "\tthis.element.innerHTML = '<h2>' + this.title + '</h2><ul>' + html.join( '' ) + '</ul>';\n" );
+			source.append( "\treturn this;\n" );
+			source.append( "};\n\n" );
+		}
+		return source.toString();
+	}
+
+
+	/**
+	 * Generates CSS source of roughly the given size.
+	 *
+	 * @param size The size of the source to generate, in chars.
+	 * @param seed A number to vary the generated selectors by, so that different files have different contents.
+	 * @return The CSS source.
+	 */
+	public static String generateCss( int size, int seed ) {
+		StringBuilder source = new StringBuilder( size + 512 );
+		for( int i = 0; source.length() < size; i++ ) {
+			String name = "widget" + seed + "-" + i;
+			source.append( "/* The " ).append( name ).append( " component */\n" );
+			source.append( "." ).append( name ).append( " {\n" );
+			source.append( "    margin: 0px 0px 0px 0px;\n" );
+			source.append( "    padding: 0.50em 1.0em;\n" );
+			source.append( "    color: #ffffff;\n" );
+			source.append( "    background: #336699 url( \"images/" ).append( name ).append( ".png\" ) no-repeat;\n" );
+			source.append( "}\n" );
+			source.append( "." ).append( name ).append( " ul li, ." ).append( name ).append( " ol li {\n" );
+			source.append( "    font-weight: bold;\n" );
+			source.append( "    border: none;\n" );
+			source.append( "}\n" );
+			source.append( "@media screen and (max-width: 600px) {\n" );
+			source.append( "    ." ).append( name ).append( " { display: none; }\n" );
+			source.append( "}\n\n" );
+		}
+		return source.toString();
+	}
+
+
+	/**
+	 * Creates a directory tree of generated source files. The tree has the given depth, with two
+	 * subdirectories in each directory above the deepest level, and the files are spread evenly over
+	 * all of the tree's directories.
+	 *
+	 * @param root The directory to create the tree in.
+	 * @param fileCount The number of files to create.
+	 * @param fileSize The size of each file, in chars.
+	 * @param depth The number of levels of directories in the tree. 1 creates all of the files in the root directory.
+	 * @param extension The extension of the files to create: "js" or "css".
+	 * @throws IOException If a file could not be written.
+	 */
+	public static void createTree( File root, int fileCount, int fileSize, int depth, String extension ) throws IOException {
+		List<File> dirs = new ArrayList<File>();
+		addDirectories( root, depth, dirs );
+
+		for( int i = 0; i < fileCount; i++ ) {
+			File dir = dirs.get( i % dirs.size() );
+			dir.mkdirs();
+
+			String contents = extension.equals( "css" ) ? generateCss( fileSize, i ) : generateJavaScript( fileSize, i );
+			FileHelper.setContents( new File( dir, "file" + i + "." + extension ), contents );
+		}
+	}
+
+
+	/**
+	 * Adds a directory, and the subdirectories below it, to a list of directories.
+	 *
+	 * @param dir
+	 * @param depth The number of levels of directories, including this one.
+	 * @param dirs The list to add the directories to.
+	 */
+	private static void addDirectories( File dir, int depth, List<File> dirs ) {
+		dirs.add( dir );
+		if( depth > 1 ) {
+			addDirectories( new File( dir, "a" ), depth - 1, dirs );
+			addDirectories( new File( dir, "b" ), depth - 1, dirs );
+		}
+	}
+
+
+	/**
+	 * Deletes a directory tree that was created for a benchmark.
+	 *
+	 * @param file The root of the tree.
+	 */
+	public static void deleteTree( File file ) {
+		File[] children = file.listFiles();
+		if( children != null ) {
+			for( File child : children ) {
+				deleteTree( child );
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,53 @@
+package webAppBuilder.benchmark;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import webAppBuilder.BuildOptions;
+import webAppBuilder.pkg.CSSPackage;
+import webAppBuilder.pkg.JavaScriptPackage;
+
+/**
+ * Benchmarks for the YUI compressors, as they are run by {@link JavaScriptPackage#createMinifiedContents}
+ * and {@link CSSPackage#createMinifiedContents}, on generated sources of each input size.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class CompressorBenchmark {
+
+	@Param( { "16384", "262144", "1048576" } )
+	public int inputSize;
+
+	private String javaScript;
+	private String css;
+	private JavaScriptPackage javaScriptPackage;
+	private CSSPackage cssPackage;
+
+
+	@Setup( Level.Trial )
+	public void setUp() {
+		javaScript = BenchmarkData.generateJavaScript( inputSize, 0 );
+		css = BenchmarkData.generateCss( inputSize, 0 );
+
+		BuildOptions buildOptions = new BuildOptions();
+		javaScriptPackage = new JavaScriptPackage( "benchmark", "benchmark.js", buildOptions );
+		cssPackage = new CSSPackage( "benchmark", "benchmark.css", buildOptions );
+	}
+
+
+	@Benchmark
+	public String compressJavaScript() throws IOException {
+		return javaScriptPackage.createMinifiedContents( javaScript );
+	}
+
+
+	@Benchmark
+	public String compressCss() throws IOException {
+		return cssPackage.createMinifiedContents( css );
+	}
+
+}
@@ -0,0 +1,96 @@
+package webAppBuilder.benchmark;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import webAppBuilder.BuildOptions;
+import webAppBuilder.FileHelper;
+import webAppBuilder.FileIndex;
+import webAppBuilder.include.TreeInclude;
+import webAppBuilder.pkg.JavaScriptPackage;
+
+/**
+ * Benchmarks for the file handling hot paths of a build: listing a tree of source files, reading
+ * them, and combining them into a package's 'debug' output. Each benchmark runs against a generated
+ * tree of JavaScript files, for each combination of the file count, file size, and tree depth parameters.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class FileBenchmark {
+
+	@Param( { "10", "100", "1000" } )
+	public int fileCount;
+
+	@Param( { "1024", "16384" } )
+	public int fileSize;
+
+	@Param( { "1", "4" } )
+	public int depth;
+
+	private File root;
+	private File firstFile;
+	private BuildOptions buildOptions;
+
+
+	@Setup( Level.Trial )
+	public void setUp() throws IOException {
+		root = Files.createTempDirectory( "webAppBuilder-benchmark" ).toFile();
+		BenchmarkData.createTree( root, fileCount, fileSize, depth, "js" );
+		firstFile = new File( root, "file0.js" );
+
+		buildOptions = new BuildOptions();
+		buildOptions.setBuildFileDir( root.getPath() );
+		buildOptions.setOutputDir( root.getPath() );
+	}
+
+
+	@TearDown( Level.Trial )
+	public void tearDown() {
+		BenchmarkData.deleteTree( root );
+	}
+
+
+	/**
+	 * Reads a single file.
+	 */
+	@Benchmark
+	public String getContents() throws IOException {
+		return FileHelper.getContents( firstFile );
+	}
+
+
+	/**
+	 * Lists the tree from disk, one directory at a time.
+	 */
+	@Benchmark
+	public Collection<File> listDirectoryFiles() throws IOException {
+		return FileHelper.listDirectoryFiles( root, null, true );
+	}
+
+
+	/**
+	 * Lists the tree with a new (empty) {@link FileIndex}, as the first include of a build does.
+	 */
+	@Benchmark
+	public Collection<File> listDirectoryFilesIndexed() throws IOException {
+		return new FileIndex().listDirectoryFiles( root, null, true );
+	}
+
+
+	/**
+	 * Resolves a 'tree' include over the whole tree, and reads and concatenates its files.
+	 */
+	@Benchmark
+	public String getCombinedContents() throws IOException {
+		JavaScriptPackage pkg = new JavaScriptPackage( "benchmark", "benchmark.js", buildOptions );
+		pkg.addIncludeDirective( new TreeInclude( pkg, root.getPath(), buildOptions, "js" ) );
+		return pkg.getCombinedContents();
+	}
+
+}
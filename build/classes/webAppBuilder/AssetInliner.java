@@ -0,0 +1,254 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.util.regex.*;
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * Inlines the small images and fonts that stylesheets refer to with url() as base64 data URIs, so that they do
+ * not each need a request of their own.
+ *
+ * A url() is resolved relative to the stylesheet that it is in, and is only inlined if it is a relative path (not
+ * a URL with a scheme, a root-relative path, or a path with a query or fragment) to a file with a known image or
+ * font extension which is no larger than the size limit. Any other url() is left as it is.
+ *
+ * Encoded data URIs are cached by the hash of the asset's contents (and its type), and each asset's hash is cached against its
+ * last modified time and size, so that an asset which is referred to by more than one stylesheet (or package, or
+ * build in a long-running process) is only read and encoded once for as long as it is unchanged. When the total
+ * size of the cached data URIs exceeds the maximum size of the cache, the least recently used are evicted.
+ */
+public class AssetInliner {
+
+	private static final Pattern URL_PATTERN = Pattern.compile( "url\\(\\s*(?:'([^']*)'|\"([^\"]*)\"|([^'\"()\\s]*))\\s*\\)", Pattern.CASE_INSENSITIVE );
+
+	private static final Map<String, String> MIME_TYPES = new HashMap<String, String>();
+	static {
+		MIME_TYPES.put( "png", "image/png" );
+		MIME_TYPES.put( "gif", "image/gif" );
+		MIME_TYPES.put( "jpg", "image/jpeg" );
+		MIME_TYPES.put( "jpeg", "image/jpeg" );
+		MIME_TYPES.put( "webp", "image/webp" );
+		MIME_TYPES.put( "svg", "image/svg+xml" );
+		MIME_TYPES.put( "ico", "image/x-icon" );
+		MIME_TYPES.put( "woff", "font/woff" );
+		MIME_TYPES.put( "woff2", "font/woff2" );
+		MIME_TYPES.put( "ttf", "font/ttf" );
+		MIME_TYPES.put( "otf", "font/otf" );
+		MIME_TYPES.put( "eot", "application/vnd.ms-fontobject" );
+	}
+
+	private static final long SHARED_CACHE_SIZE = 16L * 1024 * 1024;  // in chars
+	private static AssetInliner sharedInliner;
+
+	private long maxSize;  // in chars
+	private long size = 0;
+
+	private Map<File, Asset> assets = new HashMap<File, Asset>();
+	// Access ordered, so that the eldest entry is the least recently used
+	private LinkedHashMap<String, String> dataUris = new LinkedHashMap<String, String>( 16, 0.75f, /* accessOrder */ true );
+
+
+	/**
+	 * Retrieves the process's AssetInliner, which is shared by all packages and builds in the process (i.e. the
+	 * rebuilds of --watch mode, and the builds of a {@link BuildDaemon}).
+	 *
+	 * @return The AssetInliner.
+	 */
+	public static synchronized AssetInliner getSharedInliner() {
+		if( sharedInliner == null ) {
+			sharedInliner = new AssetInliner( SHARED_CACHE_SIZE );
+		}
+		return sharedInliner;
+	}
+
+
+	/**
+	 * Creates an AssetInliner.
+	 *
+	 * @param maxSize The maximum total length of the cached data URIs, in chars.
+	 */
+	public AssetInliner( long maxSize ) {
+		this.maxSize = maxSize;
+	}
+
+
+	/**
+	 * Finds the files that a stylesheet's url()s refer to which could be inlined if they were small enough,
+	 * i.e. the files that the stylesheet's inlined contents depend on.
+	 *
+	 * @param css The contents of the stylesheet.
+	 * @param cssFile The stylesheet, which the url()s are relative to.
+	 * @return The existing files, in the order they are first referred to.
+	 */
+	public static Set<File> findAssets( String css, File cssFile ) {
+		Set<File> files = new LinkedHashSet<File>();
+		Matcher matcher = URL_PATTERN.matcher( css );
+		while( matcher.find() ) {
+			File file = resolve( getUrl( matcher ), cssFile );
+			if( file != null && file.isFile() ) {
+				files.add( file );
+			}
+		}
+		return files;
+	}
+
+
+	/**
+	 * Replaces each url() in a stylesheet that refers to an image or font of no more than the given size with
+	 * a data URI of the file's contents.
+	 *
+	 * @param css The contents of the stylesheet.
+	 * @param cssFile The stylesheet, which the url()s are relative to.
+	 * @param maxBytes The size of the largest file to inline, in bytes.
+	 * @param log The stream to print each inlined file to, or null to not print them.
+	 * @return The contents of the stylesheet, with the files inlined.
+	 * @throws IOException If a file could not be read.
+	 */
+	public String inline( String css, File cssFile, long maxBytes, PrintStream log ) throws IOException {
+		Matcher matcher = URL_PATTERN.matcher( css );
+		StringBuffer inlinedCss = null;  // only created once something is inlined
+
+		while( matcher.find() ) {
+			File file = resolve( getUrl( matcher ), cssFile );
+			if( file == null || !file.isFile() || file.length() > maxBytes ) {
+				continue;
+			}
+
+			String replacement = "url(" + getDataUri( file ) + ")";
+			if( inlinedCss == null ) {
+				inlinedCss = new StringBuffer( css.length() + replacement.length() );
+			}
+			matcher.appendReplacement( inlinedCss, Matcher.quoteReplacement( replacement ) );
+
+			if( log != null ) {
+				log.println( "    Inlined: " + file.getPath() + " into " + cssFile.getName()
+					+ " (" + file.length() + " bytes, adds " + ( replacement.length() - matcher.group().length() ) + " bytes)" );
+			}
+		}
+
+		if( inlinedCss == null ) {
+			return css;
+		}
+		matcher.appendTail( inlinedCss );
+		return inlinedCss.toString();
+	}
+
+
+	/**
+	 * Retrieves the data URI of a file, encoding it only if its contents are not cached.
+	 *
+	 * @param file The file.
+	 * @return The data URI.
+	 * @throws IOException If the file could not be read.
+	 */
+	private String getDataUri( File file ) throws IOException {
+		File key = file.getAbsoluteFile();
+		long lastModified = key.lastModified();  // before reading, so that a change during the read invalidates the entry
+		long length = key.length();
+
+		synchronized( this ) {
+			Asset asset = assets.get( key );
+			if( asset != null && asset.lastModified == lastModified && asset.length == length ) {
+				String dataUri = dataUris.get( asset.hash );
+				if( dataUri != null ) {
+					return dataUri;
+				}
+			}
+		}
+
+		byte[] bytes = Files.readAllBytes( key.toPath() );
+		String mimeType = MIME_TYPES.get( getExtension( file ) );
+		String hash = mimeType + ";" + FileHelper.toHex( FileHelper.createDigest().digest( bytes ) );  // the same bytes may be of another type
+
+		synchronized( this ) {
+			assets.put( key, new Asset( lastModified, length, hash ) );
+
+			String dataUri = dataUris.get( hash );  // the same contents may be cached under another file
+			if( dataUri == null ) {
+				dataUri = "data:" + mimeType + ";base64," + Base64.getEncoder().encodeToString( bytes );
+				dataUris.put( hash, dataUri );
+				size += dataUri.length();
+				evict();
+			}
+			return dataUri;
+		}
+	}
+
+
+	/**
+	 * Evicts the least recently used data URIs until the total size of the cache is no more than its maximum size.
+	 * An asset whose data URI was evicted is simply encoded again.
+	 */
+	private void evict() {
+		Iterator<String> it = dataUris.values().iterator();
+		while( size > maxSize && it.hasNext() ) {
+			size -= it.next().length();
+			it.remove();
+		}
+	}
+
+
+	/**
+	 * Retrieves the URL of a url() match, from whichever of the quoted or unquoted groups matched.
+	 *
+	 * @param matcher The matcher, at a match.
+	 * @return The URL.
+	 */
+	private static String getUrl( Matcher matcher ) {
+		for( int i = 1; i <= 3; i++ ) {
+			if( matcher.group( i ) != null ) {
+				return matcher.group( i ).trim();
+			}
+		}
+		return "";
+	}
+
+
+	/**
+	 * Resolves a URL to the file that it refers to, if it is one that can be inlined.
+	 *
+	 * @param url The URL.
+	 * @param cssFile The stylesheet that the URL is in.
+	 * @return The file (which may not exist), or null if the URL is not a relative path to an image or font.
+	 */
+	private static File resolve( String url, File cssFile ) {
+		if( url.isEmpty() || url.startsWith( "/" ) || url.indexOf( ':' ) != -1 || url.indexOf( '?' ) != -1 || url.indexOf( '#' ) != -1 ) {
+			return null;
+		}
+		if( !MIME_TYPES.containsKey( getExtension( new File( url ) ) ) ) {
+			return null;
+		}
+		return FileHelper.normalize( new File( cssFile.getAbsoluteFile().getParentFile(), url.replace( '/', File.separatorChar ) ) );
+	}
+
+
+	/**
+	 * Retrieves the lower case extension of a file's name.
+	 *
+	 * @param file
+	 * @return The extension, or an empty string if the file has none.
+	 */
+	private static String getExtension( File file ) {
+		String name = file.getName();
+		int dot = name.lastIndexOf( '.' );
+		return ( dot == -1 ) ? "" : name.substring( dot + 1 ).toLowerCase( Locale.ROOT );
+	}
+
+
+	/**
+	 * The hash of an asset's contents, as of its last modified time and size.
+	 */
+	private static class Asset {
+		public final long lastModified;
+		public final long length;
+		public final String hash;
+
+		public Asset( long lastModified, long length, String hash ) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.hash = hash;
+		}
+	}
+
+}
@@ -0,0 +1,315 @@
+package webAppBuilder;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+
+/**
+ * A long-running build process, which builds projects for clients (started with the --connect argument) that
+ * send it their command line arguments over a local socket. Because the process stays running between builds,
+ * the compressors' code stays loaded and compiled by the JIT, and the directory listings ({@link FileIndex})
+ * and file contents ({@link FileContentsCache}) from earlier builds are reused for as long as they are unchanged.
+ *
+ * The daemon only listens on the loopback interface, and builds one request at a time. The output of each build
+ * is sent back to the client as it is written, followed by the build's exit status.
+ *
+ * Because any local user can connect to a loopback port, the daemon generates a random token when it starts, and
+ * writes it to a file that only the user who started it can read (see {@link #getTokenFile(int)}). A client must
+ * present the token to have its request built, and the daemon closes the connection of a client that does not.
+ *
+ * The protocol is simple: the client sends the {@link #PROTOCOL} identifier, the token, its working directory, and its
+ * arguments (each as a {@link DataOutputStream#writeUTF UTF string}, with the number of arguments as an int
+ * before them). The daemon then sends frames, each of which is a single type byte followed by an int: for
+ * {@link #FRAME_OUT} and {@link #FRAME_ERR} frames, the int is the length of the bytes that follow it, which
+ * were written to System.out or System.err. A {@link #FRAME_EXIT} frame's int is the exit status, and ends the build.
+ */
+public class BuildDaemon {
+
+	public static final int DEFAULT_PORT = 7517;
+
+	private static final String PROTOCOL = "WebAppBuilder-1";
+	private static final int FRAME_OUT = 1;
+	private static final int FRAME_ERR = 2;
+	private static final int FRAME_EXIT = 3;
+
+	private static final int REQUEST_TIMEOUT_MS = 10000;  // for reading a request, so that a stuck client cannot block other builds
+	private static final long CONTENTS_CACHE_SIZE = 64L * 1024 * 1024;  // in chars
+	private static final int TOKEN_LENGTH = 32;  // in bytes
+
+	private int port;
+	private String token;
+	private FileIndex fileIndex = new FileIndex();
+	private FileContentsCache contentsCache = new FileContentsCache( CONTENTS_CACHE_SIZE );
+
+
+	/**
+	 * Creates a BuildDaemon.
+	 *
+	 * @param port The local port to listen on.
+	 */
+	public BuildDaemon( int port ) {
+		this.port = port;
+	}
+
+
+	/**
+	 * Listens for build requests, and runs each of them in turn. This method does not return unless the
+	 * server socket fails.
+	 *
+	 * @throws IOException If the daemon could not listen on its port (i.e. another daemon is already running).
+	 */
+	public void serve() throws IOException {
+		ServerSocket serverSocket = new ServerSocket( port, 50, InetAddress.getLoopbackAddress() );
+		try {
+			// Only written once the port is bound, so that a second daemon does not replace the running daemon's token
+			token = createToken();
+			File tokenFile = getTokenFile( port );
+			writeTokenFile( tokenFile, token );
+			tokenFile.deleteOnExit();
+
+			System.out.println( "Build daemon listening on port " + port + "... (press Ctrl+C to stop)" );
+
+			while( true ) {
+				Socket socket = serverSocket.accept();
+				try {
+					handleRequest( socket );
+				} catch( IOException ex ) {
+					System.err.println( "Build request failed: " + ex.getMessage() );  // i.e. the client disconnected
+				} finally {
+					socket.close();
+				}
+			}
+
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+
+	/**
+	 * Reads a build request from a client, and runs the build with System.out and System.err redirected
+	 * to the client.
+	 *
+	 * @param socket The client's socket.
+	 * @throws IOException If the request could not be read, or the output could not be sent.
+	 */
+	private void handleRequest( Socket socket ) throws IOException {
+		socket.setSoTimeout( REQUEST_TIMEOUT_MS );
+		DataInputStream input = new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+		DataOutputStream output = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+
+		if( !PROTOCOL.equals( input.readUTF() ) ) {
+			throw new IOException( "Unknown protocol" );
+		}
+		if( !MessageDigest.isEqual( token.getBytes( "UTF-8" ), input.readUTF().getBytes( "UTF-8" ) ) ) {  // in constant time
+			throw new IOException( "The client did not present the daemon's token" );
+		}
+		File workingDir = new File( input.readUTF() );
+		String[] args = new String[ input.readInt() ];
+		for( int i = 0; i < args.length; i++ ) {
+			args[ i ] = input.readUTF();
+		}
+
+		System.out.println( "Building in " + workingDir.getPath() + "..." );
+		long startTime = System.currentTimeMillis();
+
+		PrintStream originalOut = System.out;
+		PrintStream originalErr = System.err;
+		PrintStream out = new PrintStream( new FrameOutputStream( output, FRAME_OUT ), true );
+		PrintStream err = new PrintStream( new FrameOutputStream( output, FRAME_ERR ), true );
+
+		int status;
+		System.setOut( out );
+		System.setErr( err );
+		try {
+			status = WebAppBuilder.runBuildRequest( args, workingDir, fileIndex, contentsCache );
+
+		} catch( Exception ex ) {
+			ex.printStackTrace( err );
+			status = 1;
+
+		} finally {
+			System.setOut( originalOut );
+			System.setErr( originalErr );
+		}
+
+		out.flush();
+		err.flush();
+		if( out.checkError() || err.checkError() ) {
+			throw new IOException( "The client disconnected" );
+		}
+		output.writeByte( FRAME_EXIT );
+		output.writeInt( status );
+		output.flush();
+
+		System.out.println( "Build finished with status " + status + " in " + ( System.currentTimeMillis() - startTime ) + "ms" );
+	}
+
+
+	/**
+	 * Sends a build request to a running daemon, and copies the build's output to System.out and System.err
+	 * as it is received.
+	 *
+	 * @param port The local port of the daemon.
+	 * @param args The command line arguments of the build.
+	 * @param workingDir The working directory that relative paths in the arguments are resolved against.
+	 * @return The exit status of the build.
+	 * @throws IOException If the daemon's token could not be read, or the connection to the daemon was lost.
+	 */
+	public static int sendBuildRequest( int port, String[] args, File workingDir ) throws IOException {
+		File tokenFile = getTokenFile( port );
+		String token;
+		try {
+			token = new String( Files.readAllBytes( tokenFile.toPath() ), "UTF-8" ).trim();
+		} catch( NoSuchFileException ex ) {
+			System.err.println( "No build daemon is running on port " + port + " (its token file '" + tokenFile.getPath() + "' was not found). Start one with the --daemon switch." );
+			return 1;
+		}
+
+		Socket socket;
+		try {
+			socket = new Socket( InetAddress.getLoopbackAddress(), port );
+		} catch( ConnectException ex ) {
+			System.err.println( "No build daemon is listening on port " + port + ". Start one with the --daemon switch." );
+			return 1;
+		}
+
+		try {
+			DataOutputStream output = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+			output.writeUTF( PROTOCOL );
+			output.writeUTF( token );
+			output.writeUTF( workingDir.getAbsolutePath() );
+			output.writeInt( args.length );
+			for( String arg : args ) {
+				output.writeUTF( arg );
+			}
+			output.flush();
+
+			DataInputStream input = new DataInputStream( new BufferedInputStream( socket.getInputStream() ) );
+			while( true ) {
+				int type = input.readUnsignedByte();
+				int value = input.readInt();
+
+				if( type == FRAME_EXIT ) {
+					return value;
+				}
+				byte[] bytes = new byte[ value ];
+				input.readFully( bytes );
+				PrintStream stream = ( type == FRAME_ERR ) ? System.err : System.out;
+				stream.write( bytes );
+				stream.flush();
+			}
+
+		} catch( EOFException ex ) {
+			throw new IOException( "The build daemon closed the connection before the build finished (if it was restarted, or started by another user, its token was not accepted)", ex );
+
+		} finally {
+			socket.close();
+		}
+	}
+
+
+	/**
+	 * Retrieves the file that the token of the daemon on the given port is written to, which is in the
+	 * .webAppBuilder directory of the user's home directory.
+	 *
+	 * @param port The local port of the daemon.
+	 * @return The token file.
+	 */
+	public static File getTokenFile( int port ) {
+		return new File( new File( System.getProperty( "user.home" ), ".webAppBuilder" ), "daemon-" + port + ".token" );
+	}
+
+
+	/**
+	 * Creates a random token, which clients must present to have their requests built.
+	 *
+	 * @return The hex encoded token.
+	 */
+	private static String createToken() {
+		byte[] bytes = new byte[ TOKEN_LENGTH ];
+		new SecureRandom().nextBytes( bytes );
+		return FileHelper.toHex( bytes );
+	}
+
+
+	/**
+	 * Writes a token to the token file, so that only the user who started the daemon can read it. On a POSIX
+	 * file system, the token file's directory is created with the permissions 0700, and the token file with
+	 * 0600. Elsewhere, they are only made readable and writable by their owner.
+	 *
+	 * @param tokenFile The token file.
+	 * @param token The token.
+	 * @throws IOException If the token file could not be written.
+	 */
+	private static void writeTokenFile( File tokenFile, String token ) throws IOException {
+		Path dir = tokenFile.getParentFile().toPath();
+		boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" );
+
+		Path tempFile;
+		if( posix ) {
+			if( !Files.isDirectory( dir ) ) {
+				Files.createDirectories( dir, PosixFilePermissions.asFileAttribute( PosixFilePermissions.fromString( "rwx------" ) ) );
+			}
+			tempFile = Files.createTempFile( dir, "." + tokenFile.getName() + "-", ".tmp", PosixFilePermissions.asFileAttribute( PosixFilePermissions.fromString( "rw-------" ) ) );
+		} else {
+			Files.createDirectories( dir );
+			tempFile = Files.createTempFile( dir, "." + tokenFile.getName() + "-", ".tmp" );
+			File file = tempFile.toFile();
+			file.setReadable( false, false );
+			file.setReadable( true, true );
+			file.setWritable( false, false );
+			file.setWritable( true, true );
+		}
+
+		// Written to a temporary file with the permissions already set, and then moved, so that the token is never readable by others
+		try {
+			Files.write( tempFile, token.getBytes( "UTF-8" ) );
+			Files.move( tempFile, tokenFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		} finally {
+			Files.deleteIfExists( tempFile );  // no-op if it was moved
+		}
+	}
+
+
+	/**
+	 * An OutputStream which sends the bytes written to it to a client as frames of the given type.
+	 * Writes from the build's threads are serialized on the underlying stream.
+	 */
+	private static class FrameOutputStream extends OutputStream {
+		private DataOutputStream output;
+		private int type;
+
+		public FrameOutputStream( DataOutputStream output, int type ) {
+			this.output = output;
+			this.type = type;
+		}
+
+		@Override
+		public void write( int b ) throws IOException {
+			write( new byte[] { (byte) b }, 0, 1 );
+		}
+
+		@Override
+		public void write( byte[] bytes, int offset, int length ) throws IOException {
+			if( length == 0 ) {
+				return;
+			}
+			synchronized( output ) {
+				output.writeByte( type );
+				output.writeInt( length );
+				output.write( bytes, offset, length );
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized( output ) {
+				output.flush();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+package webAppBuilder;
+
+import java.io.*;
+import java.text.ParseException;
+import jdk.jfr.*;
+
+/**
+ * The Java Flight Recorder events of a build, so that a recording of the build (or of a process that
+ * runs builds, such as a CI agent or a {@link BuildDaemon}) shows which packages and files the time and
+ * allocations of the compressors were spent on.
+ *
+ * Each event is created and timed around the work it describes, and its fields are only filled in if the
+ * event will be committed (i.e. a recording is running with the event enabled), so the events cost next to
+ * nothing when there is no recording.
+ */
+public class BuildEvents {
+
+	private static final String CATEGORY = "WebAppBuilder";
+
+
+	/**
+	 * Starts a flight recording of the rest of the process, with the JDK's "profile" settings (which include
+	 * allocation and method sampling) and the build's events. The recording is written to the given file when
+	 * the process exits.
+	 *
+	 * @param recordingFile The file to write the recording to.
+	 * @throws IOException If the recording could not be started.
+	 */
+	public static void startRecording( File recordingFile ) throws IOException {
+		Recording recording;
+		try {
+			recording = new Recording( Configuration.getConfiguration( "profile" ) );
+		} catch( ParseException ex ) {
+			throw new IOException( "Could not read the flight recorder's 'profile' settings", ex );
+		}
+		recording.setName( "WebAppBuilder" );
+		recording.setDestination( recordingFile.toPath() );
+		recording.setDumpOnExit( true );  // also when the process is stopped with Ctrl+C (i.e. in --watch mode)
+		recording.start();
+	}
+
+
+	@Name( "webAppBuilder.ProjectLoad" )
+	@Label( "Project Load" )
+	@Description( "Loading a project from its build.json file" )
+	@Category( CATEGORY )
+	public static class ProjectLoad extends Event {
+		@Label( "Project File" )
+		public String projectFile;
+
+		@Label( "Packages" )
+		public int packageCount;
+	}
+
+
+	@Name( "webAppBuilder.IncludeResolve" )
+	@Label( "Include Resolve" )
+	@Description( "Resolving one of a package's include directives into the files that it includes" )
+	@Category( CATEGORY )
+	public static class IncludeResolve extends Event {
+		@Label( "Package" )
+		public String packageName;
+
+		@Label( "Include Type" )
+		public String includeType;
+
+		@Label( "Include Index" )
+		@Description( "The position of the include in the package's includes" )
+		public int includeIndex;
+
+		@Label( "Files" )
+		public int fileCount;
+	}
+
+
+	@Name( "webAppBuilder.FileRead" )
+	@Label( "File Read" )
+	@Description( "Reading the contents of one of a package's files" )
+	@Category( CATEGORY )
+	public static class FileRead extends Event {
+		@Label( "Package" )
+		public String packageName;
+
+		@Label( "Path" )
+		public String path;
+
+		@Label( "Bytes" )
+		@DataAmount
+		public long bytes;
+
+		@Label( "Cache Hit" )
+		@Description( "True if the contents came from the file contents cache, instead of from disk" )
+		public boolean cacheHit;
+	}
+
+
+	@Name( "webAppBuilder.Minify" )
+	@Label( "Minify" )
+	@Description( "Minifying a package (or, with --minifyThreads, one of its files)" )
+	@Category( CATEGORY )
+	public static class Minify extends Event {
+		@Label( "Package" )
+		public String packageName;
+
+		@Label( "Path" )
+		@Description( "The file that was minified, or the package's output file if the package was minified as a whole" )
+		public String path;
+
+		@Label( "Bytes In" )
+		@DataAmount
+		public long bytesIn;
+
+		@Label( "Bytes Out" )
+		@DataAmount
+		public long bytesOut;
+
+		@Label( "Cache Hit" )
+		@Description( "True if the minified contents came from the minify cache, instead of from the compressor" )
+		public boolean cacheHit;
+	}
+
+
+	@Name( "webAppBuilder.OutputWrite" )
+	@Label( "Output Write" )
+	@Description( "Writing one of a package's output files" )
+	@Category( CATEGORY )
+	public static class OutputWrite extends Event {
+		@Label( "Package" )
+		public String packageName;
+
+		@Label( "Path" )
+		public String path;
+
+		@Label( "Bytes" )
+		@DataAmount
+		public long bytes;
+
+		@Label( "Changed" )
+		@Description( "False if the file's contents were unchanged, and it was left untouched" )
+		public boolean changed;
+	}
+
+}
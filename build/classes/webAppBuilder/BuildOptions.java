@@ -0,0 +1,315 @@
+package webAppBuilder;
+
+import java.io.File;
+
+
+/**
+ * A data container for the options that the project is being built with.
+ */
+public class BuildOptions {
+
+	private String buildFileDir;
+	private String outputDir = "";
+	private Boolean debugOnly;
+	private String debugSuffix;
+	private Boolean minifyOnly;
+	private String minifySuffix;
+	private Boolean verbose;
+	private Integer jobs = 1;
+	private Integer minifyThreads = 0;
+	private Integer workers = 0;
+	private Integer cssChunkSize = 0;
+	private Boolean verifyCssChunks = false;
+	private Integer inlineAssetLimit = 0;
+	private Boolean flattenImports = false;
+	private Boolean optimizeCss = false;
+	private Integer workerTimeout = 300;
+	private Integer workerHeap = 0;
+	private String cacheDir;
+	private String actionCacheDir;
+	private Long cacheSize = 100L * 1024 * 1024;
+	private Boolean watch = false;
+	private Boolean gzip = false;
+	private Boolean gzipExhaustive = false;
+	private Boolean lowMemory = false;
+	private Boolean force = false;
+	private Boolean dedupeFiles = false;
+	private Boolean profile = false;
+	private String profileReport;
+	private String profileBaseline;
+	private Integer profileThreshold = 10;
+
+	public BuildOptions() {}
+
+
+	/**
+	 * Sets the build file's directory, so files can be read relative to it.
+	 * Automatically appends the pathSeparator character if it is not present.
+	 *
+	 * @param buildFileDir
+	 */
+	public void setBuildFileDir( String buildFileDir ) {
+		// If the projectFileDir does not end with the
+		if( !buildFileDir.endsWith( File.separator ) ) {
+			buildFileDir += File.separator;
+		}
+		this.buildFileDir = buildFileDir;
+	}
+	public String getBuildFileDir() { return this.buildFileDir; }
+
+	public void setOutputDir( String outputDir ) { 
+		// normalize the output dir path
+		if( !outputDir.endsWith( File.separator ) ) {
+			outputDir += File.separator;
+		}
+		if( outputDir.startsWith("./" ) ){
+			outputDir.replace("./", "");                    
+		}	
+		this.outputDir = outputDir;
+	}
+	public String getOutputDir() { return this.outputDir; }
+
+	public void setDebugOnly( Boolean debugOnly ) { this.debugOnly = debugOnly; }
+	public Boolean getDebugOnly() { return this.debugOnly; }
+
+	public void setDebugSuffix( String debugSuffix ) { this.debugSuffix = debugSuffix; }
+	public String getDebugSuffix() { return this.debugSuffix; }
+
+	public void setMinifyOnly( Boolean minifyOnly ) { this.minifyOnly = minifyOnly; }
+	public Boolean getMinifyOnly() { return this.minifyOnly; }
+
+	public void setMinifySuffix( String minifySuffix ) { this.minifySuffix = minifySuffix; }
+	public String getMinifySuffix() { return this.minifySuffix; }
+
+	public void setVerbose( Boolean verbose ) { this.verbose = verbose; }
+	public Boolean getVerbose() { return this.verbose; }
+
+	/**
+	 * Sets the number of packages that may be built at the same time. A value of 1 (the default)
+	 * builds the packages one after another, in the order they are listed in the build.json file.
+	 *
+	 * @param jobs
+	 */
+	public void setJobs( Integer jobs ) {
+		if( jobs == null || jobs < 1 ) {
+			throw new IllegalArgumentException( "The number of jobs must be 1 or greater" );
+		}
+		this.jobs = jobs;
+	}
+	public Integer getJobs() { return this.jobs; }
+
+	/**
+	 * Sets the number of threads that each package uses to minify its files. A value of 0 (the default)
+	 * minifies each package's combined contents as a whole. A value of 1 or greater minifies each of a
+	 * package's files on its own, and then concatenates the minified files.
+	 *
+	 * @param minifyThreads
+	 */
+	public void setMinifyThreads( Integer minifyThreads ) {
+		if( minifyThreads == null || minifyThreads < 0 ) {
+			throw new IllegalArgumentException( "The number of minify threads must be 0 or greater" );
+		}
+		this.minifyThreads = minifyThreads;
+	}
+	public Integer getMinifyThreads() { return this.minifyThreads; }
+
+	/**
+	 * Sets the number of worker JVMs that packages (or files) are minified in. A value of 0 (the default)
+	 * minifies in the build's own JVM. See {@link WorkerPool}.
+	 *
+	 * @param workers
+	 */
+	public void setWorkers( Integer workers ) {
+		if( workers == null || workers < 0 ) {
+			throw new IllegalArgumentException( "The number of workers must be 0 or greater" );
+		}
+		this.workers = workers;
+	}
+	public Integer getWorkers() { return this.workers; }
+
+	/**
+	 * Sets the size (in kilobytes) of the chunks that large stylesheets are split into, to be compressed in
+	 * parallel. A value of 0 (the default) compresses each stylesheet as a whole.
+	 *
+	 * @param cssChunkSize
+	 */
+	public void setCssChunkSize( Integer cssChunkSize ) {
+		if( cssChunkSize == null || cssChunkSize < 0 ) {
+			throw new IllegalArgumentException( "The CSS chunk size must be 0 or greater" );
+		}
+		this.cssChunkSize = cssChunkSize;
+	}
+	public Integer getCssChunkSize() { return this.cssChunkSize; }
+
+	/**
+	 * Sets whether stylesheets which are compressed in chunks are also compressed as a whole, to check
+	 * that the results are the same.
+	 *
+	 * @param verifyCssChunks
+	 */
+	public void setVerifyCssChunks( Boolean verifyCssChunks ) { this.verifyCssChunks = verifyCssChunks; }
+	public Boolean getVerifyCssChunks() { return this.verifyCssChunks; }
+
+	/**
+	 * Sets the size (in bytes) of the largest image or font that a stylesheet refers to which is inlined into
+	 * the stylesheet as a data URI. A value of 0 (the default) inlines nothing. See {@link AssetInliner}.
+	 *
+	 * @param inlineAssetLimit
+	 */
+	public void setInlineAssetLimit( Integer inlineAssetLimit ) {
+		if( inlineAssetLimit == null || inlineAssetLimit < 0 ) {
+			throw new IllegalArgumentException( "The inline asset limit must be 0 or greater" );
+		}
+		this.inlineAssetLimit = inlineAssetLimit;
+	}
+	public Integer getInlineAssetLimit() { return this.inlineAssetLimit; }
+
+	/**
+	 * Sets whether the local files that stylesheets @import are flattened into the stylesheets, so that the
+	 * browser does not need to request them one after another once the package has loaded.
+	 *
+	 * @param flattenImports
+	 */
+	public void setFlattenImports( Boolean flattenImports ) { this.flattenImports = flattenImports; }
+	public Boolean getFlattenImports() { return this.flattenImports; }
+
+	/**
+	 * Sets whether minified stylesheets are passed through the {@link CssOptimizer}, which removes duplicate
+	 * rules and merges adjacent rules.
+	 *
+	 * @param optimizeCss
+	 */
+	public void setOptimizeCss( Boolean optimizeCss ) { this.optimizeCss = optimizeCss; }
+	public Boolean getOptimizeCss() { return this.optimizeCss; }
+
+	/**
+	 * Sets the number of seconds that a worker JVM may take to minify one package (or file) before it is
+	 * killed and restarted, and the package fails. Defaults to 300.
+	 *
+	 * @param workerTimeout
+	 */
+	public void setWorkerTimeout( Integer workerTimeout ) {
+		if( workerTimeout == null || workerTimeout < 1 ) {
+			throw new IllegalArgumentException( "The worker timeout must be 1 or greater" );
+		}
+		this.workerTimeout = workerTimeout;
+	}
+	public Integer getWorkerTimeout() { return this.workerTimeout; }
+
+	/**
+	 * Sets the maximum heap of each worker JVM, in megabytes. Defaults to 0, which shares the build's own
+	 * maximum heap between the workers. See {@link WorkerPool#WorkerPool(int, int, int)}.
+	 *
+	 * @param workerHeap
+	 */
+	public void setWorkerHeap( Integer workerHeap ) {
+		if( workerHeap == null || workerHeap < 0 ) {
+			throw new IllegalArgumentException( "The worker heap must be 0 or greater" );
+		}
+		this.workerHeap = workerHeap;
+	}
+	public Integer getWorkerHeap() { return this.workerHeap; }
+
+	/**
+	 * Sets the directory to cache minified contents in, between builds. Set to null (the default)
+	 * to not cache minified contents.
+	 *
+	 * @param cacheDir
+	 */
+	public void setCacheDir( String cacheDir ) { this.cacheDir = cacheDir; }
+	public String getCacheDir() { return this.cacheDir; }
+
+	/**
+	 * Sets the maximum total size of the cached minified contents, in bytes. Once exceeded,
+	 * the least recently used contents are evicted from the cache. Defaults to 100MB.
+	 *
+	 * @param cacheSize
+	 */
+	/**
+	 * Sets the directory to cache the output files of whole packages in, keyed by the contents of their
+	 * files and their configuration, so that they can be restored instead of built. The directory may be
+	 * shared between machines. Set to null (the default) to not cache packages. See {@link ActionCache}.
+	 *
+	 * @param actionCacheDir
+	 */
+	public void setActionCacheDir( String actionCacheDir ) { this.actionCacheDir = actionCacheDir; }
+	public String getActionCacheDir() { return this.actionCacheDir; }
+
+	public void setCacheSize( Long cacheSize ) { this.cacheSize = cacheSize; }
+	public Long getCacheSize() { return this.cacheSize; }
+
+	public void setWatch( Boolean watch ) { this.watch = watch; }
+	public Boolean getWatch() { return this.watch; }
+
+	public void setGzip( Boolean gzip ) { this.gzip = gzip; }
+	public Boolean getGzip() { return this.gzip; }
+
+	public void setGzipExhaustive( Boolean gzipExhaustive ) { this.gzipExhaustive = gzipExhaustive; }
+	public Boolean getGzipExhaustive() { return this.gzipExhaustive; }
+
+	/**
+	 * Sets whether packages are built in low memory mode, where the contents of each package are streamed
+	 * from its files into its output files (and through the compressor), instead of being held in memory.
+	 * The MinifyCache and per-file minification are not used in this mode.
+	 *
+	 * @param lowMemory
+	 */
+	public void setLowMemory( Boolean lowMemory ) { this.lowMemory = lowMemory; }
+	public Boolean getLowMemory() { return this.lowMemory; }
+
+	/**
+	 * Sets whether every package is built, even if its stamp file shows that its output files are
+	 * up to date. See {@link BuildStamp}.
+	 *
+	 * @param force
+	 */
+	public void setForce( Boolean force ) { this.force = force; }
+	public Boolean getForce() { return this.force; }
+
+	/**
+	 * Sets whether each package leaves out the files whose contents are byte-identical to a file that is
+	 * already included earlier in the package (i.e. vendored copies of the same library), with a warning
+	 * that lists them.
+	 *
+	 * @param dedupeFiles
+	 */
+	public void setDedupeFiles( Boolean dedupeFiles ) { this.dedupeFiles = dedupeFiles; }
+	public Boolean getDedupeFiles() { return this.dedupeFiles; }
+
+	/**
+	 * Sets whether the time spent in each phase of each package's build is recorded, and printed
+	 * when the build is done. See {@link BuildProfile}.
+	 *
+	 * @param profile
+	 */
+	public void setProfile( Boolean profile ) { this.profile = profile; }
+	public Boolean getProfile() { return this.profile; }
+
+	/**
+	 * Sets the file to write the JSON report of the build's profile to. Set to null (the default)
+	 * to not write a report.
+	 *
+	 * @param profileReport
+	 */
+	public void setProfileReport( String profileReport ) { this.profileReport = profileReport; }
+	public String getProfileReport() { return this.profileReport; }
+
+	/**
+	 * Sets the JSON profile report of an earlier build, to compare the build's profile against. Set
+	 * to null (the default) to not compare the profile.
+	 *
+	 * @param profileBaseline
+	 */
+	public void setProfileBaseline( String profileBaseline ) { this.profileBaseline = profileBaseline; }
+	public String getProfileBaseline() { return this.profileBaseline; }
+
+	/**
+	 * Sets the percentage that a phase of a package's build may be slower than it was in the
+	 * profile baseline before it is reported as a regression. Defaults to 10.
+	 *
+	 * @param profileThreshold
+	 */
+	public void setProfileThreshold( Integer profileThreshold ) { this.profileThreshold = profileThreshold; }
+	public Integer getProfileThreshold() { return this.profileThreshold; }
+
+}
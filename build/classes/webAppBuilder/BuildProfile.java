@@ -0,0 +1,280 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+import java.lang.management.*;
+import java.util.concurrent.atomic.*;
+import org.json.*;
+
+/**
+ * Records where the time of a build goes: the wall time, CPU time, bytes in and out, and file counts of
+ * each phase of each package's build. The profile is printed as a table when the build is done, and may be
+ * written as a JSON report, which can be compared against the report of an earlier build (the baseline) to
+ * find the phases that have regressed.
+ *
+ * Each {@link Phase} is timed separately, and the phases do not overlap, so the times of a package's phases
+ * add up to the time the package spent building. The CPU time of a phase is the CPU time of the thread that
+ * ran it, so phases which run on several threads (i.e. per-file minification) may have more CPU time than
+ * wall time, and their wall time is the sum over the threads.
+ */
+public class BuildProfile {
+
+	/**
+	 * The phases of a package's build.
+	 */
+	public enum Phase {
+		RESOLVE( "resolve" ),    // resolving the include directives into files. Files: the number of files resolved
+		READ( "read" ),          // reading source files. Bytes in: the size of the files. Bytes out: the chars read
+		CONCAT( "concat" ),      // combining the contents of the files
+		MINIFY( "minify" ),      // running the compressor (or reading its output from the MinifyCache). Files: the number of compressor inputs
+		WRITE( "write" );        // writing (and gzip compressing) the output files. Files: the number of output files
+
+		private String key;
+
+		private Phase( String key ) {
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+
+	/**
+	 * A phase must be slower than its baseline by at least this much, as well as by the threshold percentage,
+	 * to be reported as a regression, so that the timing noise of very short phases is not reported.
+	 */
+	private static final double MIN_REGRESSION_MS = 10;
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	private Map<String, PackageProfile> packageProfiles = new LinkedHashMap<String, PackageProfile>();
+	private long startTime = System.nanoTime();
+	private long wallTime;
+	private List<String> regressions = new ArrayList<String>();
+
+
+	/**
+	 * Adds a package to the profile.
+	 *
+	 * @param packageName The name of the package.
+	 * @return The package's profile, which its phases are recorded into.
+	 */
+	public synchronized PackageProfile addPackage( String packageName ) {
+		PackageProfile packageProfile = new PackageProfile();
+		packageProfiles.put( packageName, packageProfile );
+		return packageProfile;
+	}
+
+
+	/**
+	 * Marks the end of the build, for the profile's total wall time.
+	 */
+	public void finish() {
+		wallTime = System.nanoTime() - startTime;
+	}
+
+
+	/**
+	 * Prints the profile as a table, with a row for each phase of each package.
+	 *
+	 * @param out The stream to print to.
+	 */
+	public synchronized void printSummary( PrintStream out ) {
+		String format = "%-30s %-8s %10s %10s %12s %12s %7s%n";
+		out.println( "Build profile:" );
+		out.format( format, "Package", "Phase", "Wall (ms)", "CPU (ms)", "Bytes in", "Bytes out", "Files" );
+
+		for( Map.Entry<String, PackageProfile> entry : packageProfiles.entrySet() ) {
+			PackageProfile packageProfile = entry.getValue();
+			for( Phase phase : Phase.values() ) {
+				int i = phase.ordinal();
+				out.format( format, truncate( entry.getKey(), 30 ), phase.getKey(),
+					formatMillis( packageProfile.wallTimes.get( i ) ), formatMillis( packageProfile.cpuTimes.get( i ) ),
+					packageProfile.bytesIn.get( i ), packageProfile.bytesOut.get( i ), packageProfile.files.get( i ) );
+			}
+		}
+		out.println( "Total wall time: " + formatMillis( wallTime ) + "ms" );
+	}
+
+
+	/**
+	 * Writes the profile as a JSON report. Packages are in build.json order, and phases are in build order,
+	 * so that reports can be diffed.
+	 *
+	 * @param reportFile The file to write the report to.
+	 * @throws IOException If the report could not be written.
+	 */
+	public synchronized void writeReport( File reportFile ) throws IOException {
+		String lineSeparator = System.getProperty( "line.separator" );
+		StringBuilder json = new StringBuilder();
+		json.append( "{" ).append( lineSeparator );
+		json.append( "  \"wallMs\": " ).append( toMillis( wallTime ) ).append( "," ).append( lineSeparator );
+		json.append( "  \"packages\": [" ).append( lineSeparator );
+
+		for( Iterator<Map.Entry<String, PackageProfile>> it = packageProfiles.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, PackageProfile> entry = it.next();
+			PackageProfile packageProfile = entry.getValue();
+			json.append( "    {" ).append( lineSeparator );
+			json.append( "      \"name\": " ).append( JSONObject.quote( entry.getKey() ) ).append( "," ).append( lineSeparator );
+			json.append( "      \"phases\": {" ).append( lineSeparator );
+
+			for( Phase phase : Phase.values() ) {
+				int i = phase.ordinal();
+				json.append( "        \"" ).append( phase.getKey() ).append( "\": { " )
+					.append( "\"wallMs\": " ).append( toMillis( packageProfile.wallTimes.get( i ) ) )
+					.append( ", \"cpuMs\": " ).append( toMillis( packageProfile.cpuTimes.get( i ) ) )
+					.append( ", \"bytesIn\": " ).append( packageProfile.bytesIn.get( i ) )
+					.append( ", \"bytesOut\": " ).append( packageProfile.bytesOut.get( i ) )
+					.append( ", \"files\": " ).append( packageProfile.files.get( i ) )
+					.append( ( phase.ordinal() < Phase.values().length - 1 ) ? " }," : " }" ).append( lineSeparator );
+			}
+			json.append( "      }" ).append( lineSeparator );
+			json.append( it.hasNext() ? "    }," : "    }" ).append( lineSeparator );
+		}
+		json.append( "  ]" ).append( lineSeparator );
+		json.append( "}" ).append( lineSeparator );
+
+		FileHelper.setContents( reportFile, json.toString() );
+	}
+
+
+	/**
+	 * Compares the profile against the JSON report of an earlier build, and records each phase of each package
+	 * whose wall time has regressed by more than the given percentage (and by at least {@link #MIN_REGRESSION_MS}).
+	 * Packages and phases which are not in the baseline are not compared.
+	 *
+	 * @param baselineFile The JSON report of the earlier build.
+	 * @param thresholdPercent The percentage that a phase may be slower than its baseline before it is a regression.
+	 * @return The descriptions of the regressions, which are also available from {@link #getRegressions()}.
+	 * @throws IOException If the baseline report could not be read.
+	 */
+	public synchronized List<String> compareWith( File baselineFile, double thresholdPercent ) throws IOException {
+		Map<String, JSONObject> baselinePhases = new HashMap<String, JSONObject>();
+		try {
+			JSONArray baselinePackages = new JSONObject( FileHelper.getContents( baselineFile ) ).getJSONArray( "packages" );
+			for( int i = 0, len = baselinePackages.length(); i < len; i++ ) {
+				JSONObject baselinePackage = baselinePackages.getJSONObject( i );
+				baselinePhases.put( baselinePackage.getString( "name" ), baselinePackage.getJSONObject( "phases" ) );
+			}
+
+			for( Map.Entry<String, PackageProfile> entry : packageProfiles.entrySet() ) {
+				JSONObject phases = baselinePhases.get( entry.getKey() );
+				if( phases == null ) {
+					continue;
+				}
+
+				for( Phase phase : Phase.values() ) {
+					JSONObject baselinePhase = phases.optJSONObject( phase.getKey() );
+					if( baselinePhase == null ) {
+						continue;
+					}
+
+					double baselineMs = baselinePhase.getDouble( "wallMs" );
+					double wallMs = toMillis( entry.getValue().wallTimes.get( phase.ordinal() ) );
+					if( wallMs - baselineMs >= MIN_REGRESSION_MS && wallMs > baselineMs * ( 1 + thresholdPercent / 100 ) ) {
+						regressions.add( String.format( "'%s' %s: %.1fms, up from %.1fms in the baseline",
+							entry.getKey(), phase.getKey(), wallMs, baselineMs ) );
+					}
+				}
+			}
+
+		} catch( JSONException ex ) {
+			throw new IOException( "The profile baseline '" + baselineFile.getPath() + "' could not be read: " + ex.getMessage(), ex );
+		}
+		return regressions;
+	}
+
+
+	/**
+	 * Retrieves the regressions found by {@link #compareWith}.
+	 *
+	 * @return The descriptions of the regressions. Empty if there were none, or the profile was not compared.
+	 */
+	public synchronized List<String> getRegressions() {
+		return regressions;
+	}
+
+
+	/**
+	 * Retrieves the CPU time of the current thread.
+	 *
+	 * @return The CPU time in nanoseconds, or 0 if the JVM does not support measuring it.
+	 */
+	private static long getCpuTime() {
+		return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+	}
+
+
+	private static double toMillis( long nanos ) {
+		return Math.round( nanos / 1000.0 ) / 1000.0;
+	}
+
+
+	private static String formatMillis( long nanos ) {
+		return String.format( "%.1f", nanos / 1000000.0 );
+	}
+
+
+	private static String truncate( String str, int length ) {
+		return ( str.length() > length ) ? str.substring( 0, length - 3 ) + "..." : str;
+	}
+
+
+	/**
+	 * The totals of each phase of a single package. Phases may be recorded from any thread.
+	 */
+	public static class PackageProfile {
+		private AtomicLongArray wallTimes = new AtomicLongArray( Phase.values().length );
+		private AtomicLongArray cpuTimes = new AtomicLongArray( Phase.values().length );
+		private AtomicLongArray bytesIn = new AtomicLongArray( Phase.values().length );
+		private AtomicLongArray bytesOut = new AtomicLongArray( Phase.values().length );
+		private AtomicLongArray files = new AtomicLongArray( Phase.values().length );
+	}
+
+
+	/**
+	 * Times one run of a phase on the current thread, and adds it to a package's profile when it is stopped.
+	 * A Timer for a null profile does nothing, so that phases can be timed whether or not the build is profiled.
+	 */
+	public static class Timer {
+		private PackageProfile packageProfile;
+		private Phase phase;
+		private long startTime;
+		private long startCpuTime;
+
+		/**
+		 * Starts a Timer.
+		 *
+		 * @param packageProfile The package's profile, or null if the build is not being profiled.
+		 * @param phase The phase being timed.
+		 */
+		public Timer( PackageProfile packageProfile, Phase phase ) {
+			this.packageProfile = packageProfile;
+			this.phase = phase;
+			if( packageProfile != null ) {
+				startTime = System.nanoTime();
+				startCpuTime = getCpuTime();
+			}
+		}
+
+		/**
+		 * Stops the Timer, and adds the run of the phase to the package's profile.
+		 *
+		 * @param bytesIn The size of the phase's input.
+		 * @param bytesOut The size of the phase's output.
+		 * @param files The number of files the phase handled.
+		 */
+		public void stop( long bytesIn, long bytesOut, int files ) {
+			if( packageProfile != null ) {
+				int i = phase.ordinal();
+				packageProfile.wallTimes.addAndGet( i, System.nanoTime() - startTime );
+				packageProfile.cpuTimes.addAndGet( i, getCpuTime() - startCpuTime );
+				packageProfile.bytesIn.addAndGet( i, bytesIn );
+				packageProfile.bytesOut.addAndGet( i, bytesOut );
+				packageProfile.files.addAndGet( i, files );
+			}
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * A Reader over the combined contents of a list of files, which reads the files one line at a time, so
+ * that the combined contents never need to be held in memory at once.
+ *
+ * The characters read are the same as concatenating the {@link FileHelper#getContents(File) contents} of
+ * each file followed by a line separator (as {@link webAppBuilder.pkg.Package#getCombinedContents()} does):
+ * each line of each file ends with the platform's line separator, and there is one more line separator after
+ * each file.
+ */
+public class CombinedFilesReader extends Reader {
+
+	private Iterator<File> files;
+	private String lineSeparator = System.getProperty( "line.separator" );
+
+	private BufferedReader input;  // the file being read, or null between files
+	private String pending = "";   // the line (or line separator) being returned
+	private int pendingPos = 0;
+
+
+	/**
+	 * Creates a CombinedFilesReader.
+	 *
+	 * @param files The files to read, in order. Each file is opened when the reader reaches it.
+	 */
+	public CombinedFilesReader( Collection<File> files ) {
+		this.files = files.iterator();
+	}
+
+
+	@Override
+	public int read( char[] buffer, int offset, int length ) throws IOException {
+		if( length == 0 ) {
+			return 0;
+		}
+
+		while( pendingPos >= pending.length() ) {
+			if( !readNext() ) {
+				return -1;
+			}
+		}
+
+		int count = Math.min( length, pending.length() - pendingPos );
+		pending.getChars( pendingPos, pendingPos + count, buffer, offset );
+		pendingPos += count;
+		return count;
+	}
+
+
+	/**
+	 * Reads the next line of the current file (or, at the end of a file, the line separator that follows it)
+	 * into the pending characters, opening the next file if needed.
+	 *
+	 * @return False if there are no more files to read.
+	 * @throws IOException If a file could not be read.
+	 */
+	private boolean readNext() throws IOException {
+		if( input == null ) {
+			if( !files.hasNext() ) {
+				return false;
+			}
+			input = new BufferedReader( new FileReader( files.next() ) );  // default encoding, as FileHelper.getContents() uses
+		}
+
+		String line = input.readLine();
+		if( line != null ) {
+			pending = line + lineSeparator;
+		} else {
+			input.close();
+			input = null;
+			pending = lineSeparator;  // the line break after each file
+		}
+		pendingPos = 0;
+		return true;
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		if( input != null ) {
+			input.close();
+			input = null;
+		}
+	}
+
+}
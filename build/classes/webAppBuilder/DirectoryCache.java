@@ -0,0 +1,167 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * A directory of cache entry files with a maximum total size, which is the storage that the {@link MinifyCache}
+ * and the {@link ActionCache} are built on.
+ *
+ * Entries are written to a temporary file and then renamed, so that a concurrent reader (in this process, or in
+ * another process sharing the directory) never sees a partial entry. An entry file's last modified time is used
+ * as its "last used" time, which the caches update on each hit, and the least recently used entry files are
+ * evicted once the total size of the entry files exceeds the maximum size.
+ *
+ * The total size is found by listing the directory once, on the first store, and is then kept up to date as entry
+ * files are stored, so that the directory is only listed again (and sorted by last use) when the total has grown
+ * past the maximum size.
+ */
+public class DirectoryCache {
+
+	private File cacheDir;
+	private String entryExtension;
+	private long maxSize;
+	private long totalSize = -1;  // the total size of the entry files, or -1 if the directory has not been listed yet
+
+
+	/**
+	 * Creates a DirectoryCache.
+	 *
+	 * @param cacheDir The directory to store the entry files in. Created if it does not yet exist.
+	 * @param entryExtension The extension of the entry files, which tells them apart from other files in the directory.
+	 * @param maxSize The maximum total size of the entry files, in bytes.
+	 */
+	public DirectoryCache( File cacheDir, String entryExtension, long maxSize ) {
+		this.cacheDir = cacheDir;
+		this.entryExtension = entryExtension;
+		this.maxSize = maxSize;
+
+		cacheDir.mkdirs();
+	}
+
+
+	/**
+	 * Retrieves the entry file with the given name. The file only exists if the entry has been stored (and
+	 * not yet evicted).
+	 *
+	 * @param name The name of the entry file, without the extension.
+	 * @return The entry file.
+	 */
+	public File getEntryFile( String name ) {
+		return new File( cacheDir, name + entryExtension );
+	}
+
+
+	/**
+	 * Marks an entry file as recently used, so that it is evicted after the entry files which have not been.
+	 *
+	 * @param entryFile The entry file.
+	 */
+	public void markUsed( File entryFile ) {
+		entryFile.setLastModified( System.currentTimeMillis() );
+	}
+
+
+	/**
+	 * Stores an entry file, and then evicts the least recently used entry files if the total size of the entry
+	 * files has grown past the maximum size.
+	 *
+	 * @param name The name of the entry file, without the extension.
+	 * @param contents The contents of the entry file. Not closed by this method.
+	 * @throws IOException If the entry file could not be written.
+	 */
+	public void store( String name, InputStream contents ) throws IOException {
+		File entryFile = getEntryFile( name );
+		File tempFile = File.createTempFile( "." + name + "-", ".tmp", cacheDir );
+		try {
+			Files.copy( contents, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+
+			long replacedSize = entryFile.length();  // 0 if there is no entry file to replace
+			if( !tempFile.renameTo( entryFile ) ) {
+				return;
+			}
+			addSize( entryFile.length() - replacedSize );
+
+		} finally {
+			tempFile.delete();  // no-op if it was renamed
+		}
+	}
+
+
+	/**
+	 * Adds the size of a stored entry file to the total size of the entry files, and evicts the least recently
+	 * used entry files if the total is now more than the maximum size.
+	 *
+	 * @param size The change in the total size, in bytes.
+	 */
+	private synchronized void addSize( long size ) {
+		if( totalSize == -1 ) {
+			listEntries();  // the listing already includes the stored entry file
+		} else {
+			totalSize += size;
+		}
+
+		if( totalSize > maxSize ) {
+			evict();
+		}
+	}
+
+
+	/**
+	 * Lists the entry files in the directory, and sets the total size of the entry files from their sizes.
+	 *
+	 * @return The entry files, or an empty array if the directory could not be listed.
+	 */
+	private File[] listEntries() {
+		File[] entries = cacheDir.listFiles( new FilenameFilter() {
+			@Override
+			public boolean accept( File dir, String name ) {
+				return name.endsWith( entryExtension );
+			}
+		} );
+		if( entries == null ) {
+			entries = new File[ 0 ];
+		}
+
+		totalSize = 0;
+		for( File entry : entries ) {
+			totalSize += entry.length();
+		}
+		return entries;
+	}
+
+
+	/**
+	 * Deletes the least recently used entry files from the directory until the total size of the entry files
+	 * is no more than the maximum size. The directory is listed again first, so that the total also takes in
+	 * the entry files that other processes sharing the directory have stored or evicted.
+	 */
+	private void evict() {
+		File[] entries = listEntries();
+		if( totalSize <= maxSize ) {
+			return;
+		}
+
+		final Map<File, Long> lastUsed = new HashMap<File, Long>();
+		for( File entry : entries ) {
+			lastUsed.put( entry, entry.lastModified() );
+		}
+
+		// Oldest first
+		Arrays.sort( entries, new Comparator<File>() {
+			@Override
+			public int compare( File a, File b ) {
+				return lastUsed.get( a ).compareTo( lastUsed.get( b ) );
+			}
+		} );
+
+		for( int i = 0; i < entries.length && totalSize > maxSize; i++ ) {
+			long size = entries[ i ].length();
+			if( entries[ i ].delete() ) {
+				totalSize -= size;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,132 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * An in-memory cache of the contents of source files, so that a file which is read more than once
+ * (by more than one package, or by more than one build in a long-running process) is only read and
+ * decoded from disk once for as long as it is unchanged.
+ *
+ * Entries are keyed by the canonical path of the file, so that a file which is referred to by different
+ * paths (i.e. through a symbolic link) is still only read once. Each entry is validated against the
+ * file's last modified time and size when it is retrieved, and is re-read if either has changed. When
+ * the total size of the cached contents exceeds the maximum size of the cache, the least recently used
+ * entries are evicted.
+ */
+public class FileContentsCache {
+
+	private long maxSize;  // in chars
+	private long size = 0;
+
+	// Access ordered, so that the eldest entry is the least recently used
+	private LinkedHashMap<File, Entry> entries = new LinkedHashMap<File, Entry>( 16, 0.75f, /* accessOrder */ true );
+
+
+	/**
+	 * Creates a FileContentsCache.
+	 *
+	 * @param maxSize The maximum total length of the cached contents, in chars.
+	 */
+	public FileContentsCache( long maxSize ) {
+		this.maxSize = maxSize;
+	}
+
+
+	/**
+	 * Retrieves the contents of a file, as {@link FileHelper#getContents(File)} would return them, reading
+	 * the file only if it is not cached, or has changed since it was cached.
+	 *
+	 * @param aFile The file to read.
+	 * @return The contents of the file.
+	 * @throws IOException If the file could not be read.
+	 */
+	public String getContents( File aFile ) throws IOException {
+		String contents = getCachedContents( aFile );
+		return ( contents != null ) ? contents : readContents( aFile );
+	}
+
+
+	/**
+	 * Retrieves the cached contents of a file, if the file is cached and has not changed since it was cached.
+	 *
+	 * @param aFile The file.
+	 * @return The contents of the file, or null if they must be read with {@link #readContents(File)}.
+	 */
+	public String getCachedContents( File aFile ) {
+		File key = getKey( aFile );
+		long lastModified = key.lastModified();
+		long length = key.length();
+
+		synchronized( this ) {
+			Entry entry = entries.get( key );
+			if( entry != null && entry.lastModified == lastModified && entry.length == length ) {
+				return entry.contents;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Reads the contents of a file from disk, and caches them.
+	 *
+	 * @param aFile The file to read.
+	 * @return The contents of the file.
+	 * @throws IOException If the file could not be read.
+	 */
+	public String readContents( File aFile ) throws IOException {
+		File key = getKey( aFile );
+		long lastModified = key.lastModified();  // before reading, so that a change during the read invalidates the entry
+		long length = key.length();
+
+		// Read outside of the lock, so that files can be read in parallel
+		String contents = FileHelper.getContents( aFile );
+
+		synchronized( this ) {
+			Entry oldEntry = entries.put( key, new Entry( lastModified, length, contents ) );
+			if( oldEntry != null ) {
+				size -= oldEntry.contents.length();
+			}
+			size += contents.length();
+
+			for( Iterator<Entry> it = entries.values().iterator(); size > maxSize && it.hasNext(); ) {
+				size -= it.next().contents.length();
+				it.remove();
+			}
+		}
+		return contents;
+	}
+
+
+	/**
+	 * Retrieves the key of a file's entry: its canonical path.
+	 *
+	 * @param file The file, by any path that refers to it.
+	 * @return The canonical file, or the normalized absolute file if its canonical path could not be determined.
+	 */
+	private static File getKey( File file ) {
+		try {
+			return file.getCanonicalFile();
+		} catch( IOException ex ) {
+			return file.getAbsoluteFile().toPath().normalize().toFile();
+		}
+	}
+
+
+	/**
+	 * A cached file's contents, along with the last modified time and size of the file when it was read.
+	 */
+	private static class Entry {
+		private long lastModified;
+		private long length;
+		private String contents;
+
+		public Entry( long lastModified, long length, String contents ) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.contents = contents;
+		}
+	}
+
+}
@@ -0,0 +1,382 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.security.*;
+
+/**
+ * Encapsulates generalized file operations that the WebAppBuilder application uses.
+ */
+public class FileHelper {
+
+	/**
+	 * Fetch the entire contents of a text file, and return it in a String.
+	 * This style of implementation throws Exceptions to the caller.
+	 *
+	 * @param aFile is a file which already exists and can be read.
+	 */
+	static public String getContents( File aFile ) throws FileNotFoundException, IOException {
+		//...checks on aFile are elided
+		StringBuilder contents = new StringBuilder();
+		String lineSeparator = System.getProperty( "line.separator" );
+
+		//use buffering, reading one line at a time
+		//FileReader always assumes default encoding is OK!
+		BufferedReader input = new BufferedReader( new FileReader( aFile ) );
+		try {
+			String line = null; //not declared within while loop
+			/*
+			 * readLine is a bit quirky :
+			 * it returns the content of a line MINUS the newline.
+			 * it returns null only for the END of the stream.
+			 * it returns an empty String if two newlines appear in a row.
+			 */
+			while( (line = input.readLine()) != null ) {
+				contents.append( line );
+				contents.append( lineSeparator );
+			}
+		} finally {
+			input.close();
+		}
+
+		return contents.toString();
+	}
+
+
+	/**
+	 * Change the contents of text file in its entirety, overwriting any
+	 * existing text.
+	 *
+	 * This style of implementation throws all exceptions to the caller.
+	 *
+	 * @param aFile is an existing file which can be written to.
+	 * @throws IllegalArgumentException if param does not comply.
+	 * @throws IOException if problem encountered during write.
+	 */
+	static public void setContents( File aFile, String aContents ) throws IOException {
+		if( aFile == null ) {
+			throw new IllegalArgumentException( "File should not be null." );
+		}
+
+		Writer output = new BufferedWriter( new FileWriter( aFile ) );
+		try {
+			output.write( aContents ); // FileWriter always assumes default encoding is OK!
+		} finally {
+			output.close();
+		}
+	}
+
+
+	/**
+	 * Changes the contents of a text file in its entirety, but only if the new contents differ from the
+	 * file's existing contents. An unchanged file is left untouched (so that its last modified time is
+	 * preserved), and a changed file is written to a temporary file first, which then atomically replaces
+	 * it (so that readers never see a partially written file).
+	 *
+	 * @param aFile The file to write to. It does not need to exist.
+	 * @param aContents The new contents, which are encoded with the default encoding (as FileWriter does).
+	 * @return True if the file was written, or false if its contents were unchanged.
+	 * @throws IOException If the file could not be read or written.
+	 */
+	static public boolean setContentsIfChanged( File aFile, String aContents ) throws IOException {
+		return setContentsIfChanged( aFile, aContents.getBytes() );
+	}
+
+
+	/**
+	 * Changes the contents of a file in its entirety, but only if the new contents differ from the
+	 * file's existing contents. See {@link #setContentsIfChanged(File, String)}.
+	 *
+	 * @param aFile The file to write to. It does not need to exist.
+	 * @param bytes The new contents.
+	 * @return True if the file was written, or false if its contents were unchanged.
+	 * @throws IOException If the file could not be read or written.
+	 */
+	static public boolean setContentsIfChanged( File aFile, byte[] bytes ) throws IOException {
+		if( aFile == null ) {
+			throw new IllegalArgumentException( "File should not be null." );
+		}
+
+		if( aFile.isFile() && aFile.length() == bytes.length && MessageDigest.isEqual( hash( bytes ), hash( aFile ) ) ) {
+			return false;
+		}
+
+		File tempFile = createTempFile( aFile );
+		try {
+			OutputStream output = new FileOutputStream( tempFile );
+			try {
+				output.write( bytes );
+			} finally {
+				output.close();
+			}
+			replaceFile( tempFile, aFile );
+
+		} finally {
+			tempFile.delete();  // no-op if it was moved
+		}
+		return true;
+	}
+
+
+	/**
+	 * Moves a (temporary) file onto the given file, but only if its contents differ from the given file's
+	 * existing contents. Otherwise, the temporary file is deleted, and the given file is left untouched. See
+	 * {@link #setContentsIfChanged(File, String)}.
+	 *
+	 * @param tempFile The file with the new contents, which should be in the same directory as aFile (see
+	 *   {@link #createTempFile(File)}). It no longer exists after this method returns.
+	 * @param aFile The file to replace. It does not need to exist.
+	 * @return True if the file was replaced, or false if its contents were unchanged.
+	 * @throws IOException If a file could not be read, or the file could not be replaced.
+	 */
+	static public boolean moveIfChanged( File tempFile, File aFile ) throws IOException {
+		try {
+			if( aFile.isFile() && aFile.length() == tempFile.length() && MessageDigest.isEqual( hash( tempFile ), hash( aFile ) ) ) {
+				return false;
+			}
+			replaceFile( tempFile, aFile );
+			return true;
+
+		} finally {
+			tempFile.delete();  // no-op if it was moved
+		}
+	}
+
+
+	/**
+	 * Creates a new, empty temporary file in the same directory as the given file, so that it can
+	 * later be atomically renamed onto the given file.
+	 *
+	 * @param aFile The file that the temporary file is for.
+	 * @return The temporary file.
+	 * @throws IOException If the temporary file could not be created.
+	 */
+	static public File createTempFile( File aFile ) throws IOException {
+		return File.createTempFile( "." + aFile.getName() + "-", ".tmp", aFile.getAbsoluteFile().getParentFile() );
+	}
+
+
+	/**
+	 * Normalizes a file's path into an absolute path without any "." or ".." elements, so that
+	 * paths which refer to the same file can be compared.
+	 *
+	 * @param aFile
+	 * @return The normalized file.
+	 */
+	static public File normalize( File aFile ) {
+		return aFile.getAbsoluteFile().toPath().normalize().toFile();
+	}
+
+
+	/**
+	 * Creates a SHA-256 MessageDigest.
+	 *
+	 * @return The MessageDigest.
+	 */
+	static public MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance( "SHA-256" );
+		} catch( NoSuchAlgorithmException ex ) {
+			throw new RuntimeException( ex );  // SHA-256 is always available
+		}
+	}
+
+
+	/**
+	 * Encodes the given bytes as a lowercase hex string.
+	 *
+	 * @param bytes
+	 * @return The hex string.
+	 */
+	static public String toHex( byte[] bytes ) {
+		StringBuilder hex = new StringBuilder( bytes.length * 2 );
+		for( byte b : bytes ) {
+			hex.append( String.format( "%02x", b ) );
+		}
+		return hex.toString();
+	}
+
+
+	/**
+	 * Computes the SHA-256 hash of the given bytes.
+	 *
+	 * @param bytes
+	 * @return The hash.
+	 */
+	static public byte[] hash( byte[] bytes ) {
+		return createDigest().digest( bytes );
+	}
+
+
+	/**
+	 * Computes the SHA-256 hash of the contents of a file, without reading the whole file into memory.
+	 *
+	 * @param aFile
+	 * @return The hash.
+	 * @throws IOException If the file could not be read.
+	 */
+	static public byte[] hash( File aFile ) throws IOException {
+		MessageDigest digest = createDigest();
+
+		InputStream input = new FileInputStream( aFile );
+		try {
+			byte[] buffer = new byte[ 65536 ];
+			int read;
+			while( ( read = input.read( buffer ) ) != -1 ) {
+				digest.update( buffer, 0, read );
+			}
+		} finally {
+			input.close();
+		}
+		return digest.digest();
+	}
+
+
+	/**
+	 * Replaces a file with another, atomically if the file system supports it.
+	 *
+	 * @param source The file to move.
+	 * @param target The file to replace.
+	 * @throws IOException If the file could not be moved.
+	 */
+	private static void replaceFile( File source, File target ) throws IOException {
+		try {
+			Files.move( source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE );
+		} catch( AtomicMoveNotSupportedException ex ) {
+			Files.move( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+		}
+	}
+
+
+	/**
+	 * Writes a header and then the contents of each of the given files into a file, overwriting any
+	 * existing contents. The files are copied byte-for-byte (with {@link FileChannel#transferTo}), without
+	 * being decoded or re-encoded, so the memory used does not depend on the size of the files.
+	 *
+	 * The output matches concatenating the {@link #getContents(File) contents} of each file followed by a
+	 * line separator, for files which use the platform's line separator: a line separator is added to the
+	 * end of a file which does not end with a newline, and then another line separator is added after each file.
+	 *
+	 * @param aFile The file to write to.
+	 * @param header The header to write first, which is encoded with the default encoding (as FileWriter does).
+	 * @param files The files to concatenate, in order.
+	 * @throws IOException If a file could not be read, or the output could not be written.
+	 */
+	static public void concatenateFiles( File aFile, String header, Collection<File> files ) throws IOException {
+		if( aFile == null ) {
+			throw new IllegalArgumentException( "File should not be null." );
+		}
+
+		byte[] lineSeparator = System.getProperty( "line.separator" ).getBytes();
+
+		FileChannel output = new FileOutputStream( aFile ).getChannel();
+		try {
+			writeFully( output, header.getBytes() );
+
+			for( File file : files ) {
+				FileChannel input = new FileInputStream( file ).getChannel();
+				try {
+					long size = input.size();
+					long position = 0;
+					while( position < size ) {
+						position += input.transferTo( position, size - position, output );
+					}
+
+					// getContents() always ends the last line of a file with a line separator
+					ByteBuffer lastByte = ByteBuffer.allocate( 1 );
+					if( size > 0 && input.read( lastByte, size - 1 ) == 1 && lastByte.get( 0 ) != '\n' ) {
+						writeFully( output, lineSeparator );
+					}
+				} finally {
+					input.close();
+				}
+
+				writeFully( output, lineSeparator );  // make sure there is a line break after each file
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+
+	/**
+	 * Writes all of the given bytes to a channel.
+	 *
+	 * @param channel The channel to write to.
+	 * @param bytes The bytes to write.
+	 * @throws IOException If the bytes could not be written.
+	 */
+	private static void writeFully( WritableByteChannel channel, byte[] bytes ) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap( bytes );
+		while( buffer.hasRemaining() ) {
+			channel.write( buffer );
+		}
+	}
+
+
+	/**
+	 * Given a filename or pathname string, adds the given suffix before the file extension,
+	 * and returns the new filename/pathname string.
+	 *
+	 * @param filename
+	 * @param suffix
+	 */
+	public static String insertFileSuffix( String filename, String suffix ) {
+		int endOfDot = filename.lastIndexOf( "." );
+		if( endOfDot == -1 ) {
+			throw new RuntimeException( "No period in the target file output." );
+		}
+		return filename.substring( 0, endOfDot ) + suffix + filename.substring( endOfDot );
+	}
+
+
+	/**
+	 * Lists the files in a given directory, with an optional filter, and the option of recursing into
+	 * subdirectories. The entries of each directory are sorted by name, so that the order of the files
+	 * does not depend on the file system.
+	 *
+	 * @param directory The directory to list files from.
+	 * @param filter A filter to use to only accept certain files. Set to null for no filter.
+	 * @param recurse True to recurse the directory's subdirectories.
+	 * @return The Collection of files.
+	 * @throws FileNotFoundException If the directory provided does not exist, or is not a directory (it is a file).
+	 */
+	public static Collection<File> listDirectoryFiles( File directory, FilenameFilter filter, boolean recurse ) throws FileNotFoundException {
+		List<File> files = new ArrayList<File>();
+
+		// Get files / directories in the directory
+		File[] entries = directory.listFiles();
+
+		if( entries == null ) {
+			throw new FileNotFoundException( "The directory '" + directory.getAbsolutePath() + "' could not be found" );
+		}
+		Arrays.sort( entries, new Comparator<File>() {
+			@Override
+			public int compare( File a, File b ) {
+				return a.getName().compareTo( b.getName() );
+			}
+		} );
+
+		// Go over entries
+		for( File entry : entries ) {
+			// If there is no filter or the filter accepts the
+			// file / directory, add it to the list
+			if( filter == null || filter.accept( directory, entry.getName() ) ) {
+				files.add( entry );
+			}
+
+			// If the file is a directory and the recurse flag
+			// is set, recurse into the directory
+			if( recurse && entry.isDirectory() ) {
+				files.addAll( listDirectoryFiles( entry, filter, recurse ) );
+			}
+		}
+
+		// Return collection of files
+		return files;
+	}
+
+}
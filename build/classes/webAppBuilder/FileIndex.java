@@ -0,0 +1,303 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+
+/**
+ * An index of the entries of the directories that a project's {@link webAppBuilder.include.Include Include Directives}
+ * read from, so that each directory on disk is only listed once per build, no matter how many includes (or packages)
+ * refer to it or its subdirectories.
+ *
+ * The first time a directory is requested recursively, it and all of its subdirectories are walked with a single
+ * {@link Files#walkFileTree} call, and each entry is recorded along with whether it is a directory (from its
+ * {@link BasicFileAttributes}). Requests for that directory, or any directory within it, are then answered
+ * from the index. A directory which is requested without recursing is only listed itself (a walk with a depth of
+ * 1), so that a non-recursive include of a directory does not walk everything below it; its subdirectories are
+ * walked if a later request needs them. Entries are sorted by name (in the order of their UTF-16 code units, regardless of locale), so
+ * that the order of a directory's files is the same on every file system, and every machine.
+ *
+ * Subdirectories which are rejected by the directory filter of a request are pruned from the walk, and are
+ * not listed at all. If a later request needs a pruned subdirectory, it is walked (and indexed) then.
+ */
+public class FileIndex {
+
+	// Map of the normalized absolute path of each indexed directory to its listing
+	private Map<Path, Listing> directories = new HashMap<Path, Listing>();
+
+	// The order of the entries of each directory: by name
+	private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare( Entry a, Entry b ) {
+			return a.name.compareTo( b.name );
+		}
+	};
+
+
+	/**
+	 * Lists the files in a given directory, with an optional filter, and the option of recursing into
+	 * subdirectories. The files are returned in the same order as {@link FileHelper#listDirectoryFiles},
+	 * and with paths relative to the given directory's path.
+	 *
+	 * @param directory The directory to list files from.
+	 * @param filter A filter to use to only accept certain files. Set to null for no filter.
+	 * @param recurse True to recurse the directory's subdirectories.
+	 * @return The Collection of files.
+	 * @throws FileNotFoundException If the directory provided does not exist, or is not a directory (it is a file).
+	 */
+	public synchronized Collection<File> listDirectoryFiles( File directory, FilenameFilter filter, boolean recurse ) throws FileNotFoundException {
+		return listDirectoryFiles( directory, filter, recurse, null );
+	}
+
+
+	/**
+	 * Lists the files in a given directory, with an optional filter, and the option of recursing into
+	 * subdirectories. Subdirectories that are not accepted by the directory filter are neither listed
+	 * nor recursed into.
+	 *
+	 * @param directory The directory to list files from.
+	 * @param filter A filter to use to only accept certain files. Set to null for no filter.
+	 * @param recurse True to recurse the directory's subdirectories.
+	 * @param directoryFilter A filter which is given the normalized absolute path of each subdirectory, and
+	 *   returns false for subdirectories that should be pruned. Set to null to recurse into all subdirectories.
+	 * @return The Collection of files.
+	 * @throws FileNotFoundException If the directory provided does not exist, or is not a directory (it is a file).
+	 */
+	public synchronized Collection<File> listDirectoryFiles( File directory, FilenameFilter filter, boolean recurse, DirectoryStream.Filter<Path> directoryFilter ) throws FileNotFoundException {
+		List<File> files = new ArrayList<File>();
+		collectFiles( directory, getEntries( directory, directoryFilter, recurse ), filter, recurse, directoryFilter, /* directoriesOnly */ false, files );
+		return files;
+	}
+
+
+	/**
+	 * Lists all of the subdirectories of a given directory, recursively.
+	 *
+	 * @param directory The directory to list the subdirectories of.
+	 * @param directoryFilter A filter which is given the normalized absolute path of each subdirectory, and
+	 *   returns false for subdirectories that should be pruned. Set to null to list all subdirectories.
+	 * @return The Collection of subdirectories.
+	 * @throws FileNotFoundException If the directory provided does not exist, or is not a directory (it is a file).
+	 */
+	public synchronized Collection<File> listSubdirectories( File directory, DirectoryStream.Filter<Path> directoryFilter ) throws FileNotFoundException {
+		List<File> files = new ArrayList<File>();
+		collectFiles( directory, getEntries( directory, directoryFilter, /* recurse */ true ), null, /* recurse */ true, directoryFilter, /* directoriesOnly */ true, files );
+		return files;
+	}
+
+
+	/**
+	 * Discards the index, so that directories are listed from disk again the next time that they
+	 * are requested (i.e. when files may have been added or removed).
+	 */
+	public synchronized void clear() {
+		directories.clear();
+	}
+
+
+	/**
+	 * Discards the listings of the directories whose last modified times have changed since they were
+	 * indexed (i.e. an entry was added, removed, or renamed), and of the directories that no longer exist.
+	 * Other listings are kept, so that a long-running process only lists the directories that have changed.
+	 */
+	public synchronized void removeStale() {
+		for( Iterator<Map.Entry<Path, Listing>> it = directories.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Path, Listing> directory = it.next();
+			File dir = directory.getKey().toFile();
+
+			if( !dir.isDirectory() || dir.lastModified() != directory.getValue().lastModified ) {
+				it.remove();
+			}
+		}
+	}
+
+
+	/**
+	 * Adds the entries of a directory (and, recursively, of its subdirectories) to the given list.
+	 *
+	 * @param directory The directory, as it was requested.
+	 * @param entries The entries of the directory.
+	 * @param filter A filter to use to only accept certain files, or null for no filter.
+	 * @param recurse True to recurse the directory's subdirectories.
+	 * @param directoryFilter A filter for the subdirectories to include and recurse into, or null for all subdirectories.
+	 * @param directoriesOnly True to only add entries which are directories.
+	 * @param files The list to add the files to.
+	 * @throws FileNotFoundException If a subdirectory which is not indexed (i.e. it was pruned from an earlier walk) could not be walked.
+	 */
+	private void collectFiles( File directory, List<Entry> entries, FilenameFilter filter, boolean recurse, DirectoryStream.Filter<Path> directoryFilter,
+			boolean directoriesOnly, List<File> files ) throws FileNotFoundException {
+		for( Entry entry : entries ) {
+			File file = new File( directory, entry.name );
+
+			// Skip pruned directories entirely
+			if( entry.directory && directoryFilter != null && !acceptDirectory( directoryFilter, normalize( file ) ) ) {
+				continue;
+			}
+
+			// If there is no filter or the filter accepts the
+			// file / directory, add it to the list
+			if( ( !directoriesOnly || entry.directory ) && ( filter == null || filter.accept( directory, entry.name ) ) ) {
+				files.add( file );
+			}
+
+			// If the file is a directory and the recurse flag
+			// is set, recurse into the directory
+			if( recurse && entry.directory ) {
+				collectFiles( file, getEntries( file, directoryFilter, recurse ), filter, recurse, directoryFilter, directoriesOnly, files );
+			}
+		}
+	}
+
+
+	/**
+	 * Retrieves the entries of a directory, walking the directory (and, if recursing, its tree) and adding it
+	 * to the index if it is not already indexed.
+	 *
+	 * @param directory The directory.
+	 * @param directoryFilter A filter for the subdirectories to walk, or null to walk all subdirectories.
+	 * @param recurse True to walk the directory's subdirectories as well, or false to only list the directory itself.
+	 * @return The entries of the directory.
+	 * @throws FileNotFoundException If the directory does not exist, or is not a directory (it is a file).
+	 */
+	private List<Entry> getEntries( File directory, DirectoryStream.Filter<Path> directoryFilter, boolean recurse ) throws FileNotFoundException {
+		Path path = normalize( directory );
+
+		Listing listing = directories.get( path );
+		if( listing == null ) {
+			if( !Files.isDirectory( path ) ) {
+				throw new FileNotFoundException( "The directory '" + directory.getAbsolutePath() + "' could not be found" );
+			}
+
+			try {
+				Files.walkFileTree( path, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), recurse ? Integer.MAX_VALUE : 1, new IndexingFileVisitor( directoryFilter ) );
+			} catch( IOException ex ) {
+				FileNotFoundException notFoundEx = new FileNotFoundException( "The directory '" + directory.getAbsolutePath() + "' could not be read" );
+				notFoundEx.initCause( ex );
+				throw notFoundEx;
+			}
+			listing = directories.get( path );
+		}
+		return listing.entries;
+	}
+
+
+	/**
+	 * Runs a directory filter on a directory.
+	 *
+	 * @param directoryFilter The filter.
+	 * @param dir The normalized absolute path of the directory.
+	 * @return True if the directory is accepted by the filter, or the filter could not read it (so that the
+	 *   error is reported when the directory is walked).
+	 */
+	private static boolean acceptDirectory( DirectoryStream.Filter<Path> directoryFilter, Path dir ) {
+		try {
+			return directoryFilter.accept( dir );
+		} catch( IOException ex ) {
+			return true;
+		}
+	}
+
+
+	/**
+	 * Normalizes a file's path into an absolute path without any "." or ".." elements, which is
+	 * the form that the index's directories are stored in.
+	 *
+	 * @param file
+	 * @return The normalized path.
+	 */
+	private static Path normalize( File file ) {
+		return file.getAbsoluteFile().toPath().normalize();
+	}
+
+
+	/**
+	 * The listing of a directory in the index.
+	 */
+	private static class Listing {
+		private long lastModified;  // the last modified time of the directory when it was listed
+		private List<Entry> entries = new ArrayList<Entry>();  // sorted by name, once the directory has been walked
+
+		public Listing( long lastModified ) {
+			this.lastModified = lastModified;
+		}
+	}
+
+
+	/**
+	 * A single entry in a directory of the index.
+	 */
+	private static class Entry {
+		private String name;
+		private boolean directory;
+
+		public Entry( String name, boolean directory ) {
+			this.name = name;
+			this.directory = directory;
+		}
+	}
+
+
+	/**
+	 * The FileVisitor which adds each directory (and the entries within it) that it visits to the index.
+	 */
+	private class IndexingFileVisitor extends SimpleFileVisitor<Path> {
+		private Path root;
+		private DirectoryStream.Filter<Path> directoryFilter;
+
+		public IndexingFileVisitor( DirectoryStream.Filter<Path> directoryFilter ) {
+			this.directoryFilter = directoryFilter;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs ) {
+			if( root == null ) {
+				root = dir;
+
+			} else if( directoryFilter != null && !acceptDirectory( directoryFilter, dir ) ) {
+				// Pruned. Index the directory itself, but not its entries
+				addEntry( dir, true );
+				return FileVisitResult.SKIP_SUBTREE;
+			}
+
+			// A subdirectory which was already indexed by an earlier walk of itself is replaced
+			directories.put( dir, new Listing( attrs.lastModifiedTime().toMillis() ) );
+			if( !dir.equals( root ) ) {
+				addEntry( dir, true );
+			}
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult postVisitDirectory( Path dir, IOException ex ) throws IOException {
+			if( ex != null ) {
+				throw ex;
+			}
+			Collections.sort( directories.get( dir ).entries, ENTRY_ORDER );
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFile( Path file, BasicFileAttributes attrs ) {
+			// A subdirectory is only visited as a file when the walk is not recursing. It is walked if it is requested
+			addEntry( file, attrs.isDirectory() );
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFileFailed( Path file, IOException ex ) throws IOException {
+			if( file.equals( root ) ) {
+				throw ex;
+			}
+
+			// A broken link, or a link back up the tree. Index it as a file, but don't follow it
+			addEntry( file, false );
+			return FileVisitResult.CONTINUE;
+		}
+
+		private void addEntry( Path path, boolean directory ) {
+			directories.get( path.getParent() ).entries.add( new Entry( path.getFileName().toString(), directory ) );
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+package webAppBuilder;
+
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.security.*;
+
+/**
+ * An on-disk cache of minified contents, so that files (or packages) whose source has not changed since
+ * a previous build do not need to be minified again.
+ *
+ * Each entry is stored in its own file in the cache directory, named by the SHA-256 hash of the unminified
+ * source plus the options that the compressor was run with (see {@link #createKey(String, String)}). When the
+ * total size of the entries exceeds the maximum size of the cache, the least recently used entries are evicted.
+ * An entry's last modified time is used as its "last used" time, which is updated on each cache hit. The
+ * entries are stored, and evicted, by a {@link DirectoryCache}.
+ */
+public class MinifyCache {
+
+	private static final String ENTRY_EXTENSION = ".min";
+
+	private DirectoryCache entries;
+
+	private AtomicInteger hits = new AtomicInteger();
+	private AtomicInteger misses = new AtomicInteger();
+
+
+	/**
+	 * Creates a MinifyCache.
+	 *
+	 * @param cacheDir The directory to store the cache's entries in. Created if it does not yet exist.
+	 * @param maxSize The maximum total size of the cache's entries, in bytes.
+	 */
+	public MinifyCache( File cacheDir, long maxSize ) {
+		this.entries = new DirectoryCache( cacheDir, ENTRY_EXTENSION, maxSize );
+	}
+
+
+	/**
+	 * Creates the key for a cache entry, which is the hex encoded SHA-256 hash of the unminified source and
+	 * a string which identifies the compressor and the options that it is run with.
+	 *
+	 * @param source The unminified source.
+	 * @param compressorSignature A string identifying the compressor and its options. See
+	 *   {@link webAppBuilder.pkg.Package#getCompressorSignature()}.
+	 * @return The key.
+	 */
+	public static String createKey( String source, String compressorSignature ) {
+		MessageDigest digest = FileHelper.createDigest();
+		try {
+			digest.update( compressorSignature.getBytes( "UTF-8" ) );
+			digest.update( (byte) 0 );
+			digest.update( source.getBytes( "UTF-8" ) );
+		} catch( UnsupportedEncodingException ex ) {
+			throw new RuntimeException( ex );  // UTF-8 is always supported
+		}
+		return FileHelper.toHex( digest.digest() );
+	}
+
+
+	/**
+	 * Creates a fingerprint of the given class's bytecode, so that a change to the version of a compressor
+	 * (which is bundled with the application, and has no version information of its own) changes the
+	 * keys of the entries that it produces.
+	 *
+	 * @param cls The class to fingerprint.
+	 * @return The hex encoded SHA-256 hash of the class file, or the class name if the class file could not be read.
+	 */
+	public static String fingerprintClass( Class<?> cls ) {
+		InputStream input = cls.getResourceAsStream( cls.getSimpleName() + ".class" );
+		if( input == null ) {
+			return cls.getName();
+		}
+
+		MessageDigest digest = FileHelper.createDigest();
+		try {
+			try {
+				byte[] buffer = new byte[ 8192 ];
+				int read;
+				while( ( read = input.read( buffer ) ) != -1 ) {
+					digest.update( buffer, 0, read );
+				}
+			} finally {
+				input.close();
+			}
+		} catch( IOException ex ) {
+			return cls.getName();
+		}
+		return FileHelper.toHex( digest.digest() );
+	}
+
+
+	/**
+	 * Retrieves the minified contents for the given key.
+	 *
+	 * @param key The key, created with {@link #createKey(String, String)}.
+	 * @return The minified contents, or null if there is no entry for the key.
+	 */
+	public String get( String key ) {
+		File entryFile = entries.getEntryFile( key );
+
+		try {
+			String contents = readEntry( entryFile );
+			entries.markUsed( entryFile );
+			hits.incrementAndGet();
+			return contents;
+
+		} catch( IOException ex ) {
+			// No entry, or the entry was evicted (or is being replaced) by another build. Treat as a miss
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+
+	/**
+	 * Stores the minified contents for the given key, and then evicts the least recently used entries
+	 * if the cache has grown past its maximum size. An entry that cannot be written is simply not cached.
+	 *
+	 * @param key The key, created with {@link #createKey(String, String)}.
+	 * @param minifiedContents The minified contents to store.
+	 */
+	public void put( String key, String minifiedContents ) {
+		try {
+			entries.store( key, new ByteArrayInputStream( minifiedContents.getBytes( "UTF-8" ) ) );
+		} catch( IOException ex ) {
+			return;
+		}
+	}
+
+
+	/**
+	 * Retrieves the number of cache hits since the cache was created.
+	 *
+	 * @return The number of hits.
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+
+	/**
+	 * Retrieves the number of cache misses since the cache was created.
+	 *
+	 * @return The number of misses.
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+
+	/**
+	 * Reads the contents of an entry's file.
+	 *
+	 * @param entryFile
+	 * @return The contents of the entry.
+	 * @throws IOException If the entry does not exist, or could not be read.
+	 */
+	private static String readEntry( File entryFile ) throws IOException {
+		Reader input = new InputStreamReader( new FileInputStream( entryFile ), "UTF-8" );
+		try {
+			StringBuilder contents = new StringBuilder();
+			char[] buffer = new char[ 8192 ];
+			int read;
+			while( ( read = input.read( buffer ) ) != -1 ) {
+				contents.append( buffer, 0, read );
+			}
+			return contents.toString();
+		} finally {
+			input.close();
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package webAppBuilder;
+
+import webAppBuilder.pkg.Package;
+import java.util.*;
+import java.io.*;
+
+/**
+ * The main class of a worker process of a {@link WorkerPool}. The worker reads minification tasks from its
+ * standard input, runs each one with the compressor of the task's package type, and writes the result to its
+ * standard output, until its standard input is closed. See {@link WorkerPool} for the protocol.
+ *
+ * As standard output is the channel back to the build, anything else that is printed to it is sent to
+ * standard error instead, which is shared with the build process.
+ */
+public class MinifyWorker {
+
+	/**
+	 * Runs the worker.
+	 *
+	 * @param args Not used.
+	 * @throws IOException If the build process could not be read from, or written to.
+	 */
+	public static void main( String[] args ) throws IOException {
+		DataInputStream input = new DataInputStream( new BufferedInputStream( System.in ) );
+		DataOutputStream output = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( FileDescriptor.out ) ) );
+		System.setOut( System.err );
+
+		Map<String, Package> packages = new HashMap<String, Package>();  // one instance of each package type, by class name
+		while( true ) {
+			String packageClass;
+			try {
+				packageClass = input.readUTF();
+			} catch( EOFException ex ) {
+				return;  // the build is done
+			}
+			String contents = WorkerPool.readString( input );
+
+			ByteArrayOutputStream warnings = new ByteArrayOutputStream();
+			int status;
+			String result;
+			try {
+				Package pkg = packages.get( packageClass );
+				if( pkg == null ) {
+					pkg = createPackage( packageClass );
+					packages.put( packageClass, pkg );
+				}
+				PrintStream warningStream = new PrintStream( warnings, true, "UTF-8" );
+				pkg.setLogStreams( warningStream, warningStream );
+
+				result = pkg.createMinifiedContents( contents );
+				status = WorkerPool.STATUS_OK;
+
+			} catch( OutOfMemoryError ex ) {
+				contents = null;  // free what we can, to be able to reply
+				result = "Out of memory";
+				status = WorkerPool.STATUS_OUT_OF_MEMORY;
+
+			} catch( Exception ex ) {
+				result = ( ex.getMessage() != null ) ? ex.getMessage() : ex.toString();
+				status = WorkerPool.STATUS_FAILED;
+			}
+
+			output.writeByte( status );
+			WorkerPool.writeString( output, result );
+			WorkerPool.writeString( output, warnings.toString( "UTF-8" ) );
+			output.flush();
+
+			if( status == WorkerPool.STATUS_OUT_OF_MEMORY ) {
+				System.exit( 1 );  // the heap may be left in any state. The build restarts the worker
+			}
+		}
+	}
+
+
+	/**
+	 * Creates an instance of a Package class, to run its compressor.
+	 *
+	 * @param packageClass The class name of the Package.
+	 * @return The Package.
+	 * @throws Exception If the class could not be instantiated.
+	 */
+	private static Package createPackage( String packageClass ) throws Exception {
+		return Class.forName( packageClass ).asSubclass( Package.class )
+			.getConstructor( String.class, String.class, BuildOptions.class )
+			.newInstance( "worker", "worker", new BuildOptions() );
+	}
+
+}
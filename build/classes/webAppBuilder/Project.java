@@ -0,0 +1,449 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+import java.util.concurrent.*;
+import org.json.*;
+import webAppBuilder.include.Include;
+import webAppBuilder.pkg.Package;
+
+/**
+ * Represents a project, loaded from the build.json file.
+ */
+public class Project {
+
+	private String name;
+	private String licenseText;
+	private List<Package> pkgs = new ArrayList<Package>();
+	private BuildOptions buildOptions;
+
+	private String licenseHeader;
+	private MinifyCache minifyCache;
+	private ActionCache actionCache;
+	private FileIndex fileIndex = new FileIndex();
+	private BuildProfile profile;
+
+	// The maximum size of the Project's own file contents cache, in chars. Files included by more than one package
+	// are read once per build, as long as the contents of all of the Project's files fit in the cache
+	private static final long CONTENTS_CACHE_SIZE = 64L * 1024 * 1024;
+
+
+	/**
+	 * Creates a Project based on a build.json configuration file on the system.
+	 *
+	 * @param projectFile
+	 * @param buildOptions
+	 * @return The Project representation of the JSON.
+	 * @throws Exception
+	 */
+	public static Project fromFile( File projectFile, BuildOptions buildOptions ) throws Exception {
+		BuildEvents.ProjectLoad event = new BuildEvents.ProjectLoad();
+		event.begin();
+
+		JSONObject projJSON = new JSONObject( FileHelper.getContents( projectFile ) );
+
+		String name = projJSON.optString( "projectName" );
+		String licenseText = projJSON.optString( "licenseText" );
+		List<Package> pkgs = new ArrayList<Package>();
+
+		// Create the Project's Packages
+		JSONArray pkgsArr = projJSON.getJSONArray( "pkgs" );
+		for( int i = 0, len = pkgsArr.length(); i < len; i++ ) {
+			Package pkg = Package.fromJSON( pkgsArr.getJSONObject( i ), buildOptions );
+			pkgs.add( pkg );
+		}
+
+		event.end();
+		if( event.shouldCommit() ) {
+			event.projectFile = projectFile.getPath();
+			event.packageCount = pkgs.size();
+			event.commit();
+		}
+		return new Project( name, licenseText, pkgs, buildOptions );
+	}
+
+
+	/**
+	 * Creates a new Project. A Project encapsulates {@link Package Packages}, and {@link Package Packages}
+	 * encapsulate {@link webAppBuilder.include.Include Include Directives}.
+	 *
+	 * @param name
+	 * @param licenseText
+	 * @param pkgs
+	 * @param buildOptions
+	 */
+	public Project( String name, String licenseText, List<Package> pkgs, BuildOptions buildOptions ) {
+		this.name = name;
+		this.licenseText = licenseText;
+		this.pkgs = pkgs;
+		this.buildOptions = buildOptions;
+
+		licenseHeader = createLicenseHeader();
+
+		List<File> outputFiles = new ArrayList<File>();
+		for( Package pkg : pkgs ) {
+			outputFiles.addAll( pkg.getOutputFiles() );
+		}
+		for( Package pkg : pkgs ) {
+			pkg.setFileIndex( fileIndex );
+			pkg.setExcludedFiles( outputFiles );  // never include the output of one package in another
+		}
+
+		// Read each file once per build, no matter how many packages include it. In low memory mode, files are
+		// streamed instead of being read into memory, so they are not cached
+		if( !buildOptions.getLowMemory() ) {
+			setFileContentsCache( new FileContentsCache( CONTENTS_CACHE_SIZE ) );
+		}
+
+		if( buildOptions.getCacheDir() != null ) {
+			minifyCache = new MinifyCache( new File( buildOptions.getCacheDir() ), buildOptions.getCacheSize() );
+			for( Package pkg : pkgs ) {
+				pkg.setMinifyCache( minifyCache );
+			}
+		}
+		// Low memory mode streams the files through the compressor in this JVM, so workers are not used
+		if( buildOptions.getWorkers() > 0 && !buildOptions.getLowMemory() ) {
+			WorkerPool workerPool = WorkerPool.getSharedPool( buildOptions.getWorkers(), buildOptions.getWorkerTimeout(), buildOptions.getWorkerHeap() );
+			for( Package pkg : pkgs ) {
+				pkg.setWorkerPool( workerPool );
+			}
+		}
+		if( buildOptions.getActionCacheDir() != null ) {
+			actionCache = new ActionCache( new File( buildOptions.getActionCacheDir() ), buildOptions.getCacheSize() );
+			for( Package pkg : pkgs ) {
+				pkg.setActionCache( actionCache );
+			}
+		}
+
+		System.out.println( "Loaded project: '" + name + "', with " + pkgs.size() + " package(s)" );
+	}
+
+
+	/**
+	 * Retrieves the Project's packages.
+	 *
+	 * @return The packages, in the order they are listed in the build.json file.
+	 */
+	public List<Package> getPackages() {
+		return pkgs;
+	}
+
+
+	/**
+	 * Determines the packages that are affected by a set of changed (modified, added, or deleted) files, and
+	 * so need to be rebuilt.
+	 *
+	 * The files of every package, and the files that its output is built from along with them (its
+	 * {@link Package#getDependencies() dependencies}, such as the files that a stylesheet @imports, and the assets
+	 * that it inlines), are resolved into a reverse index of each file to the packages that use it.
+	 * A changed file which is not in the index (because it was added or deleted) affects the packages with an
+	 * include directive that {@link Include#matches matches} it, as does a 'directory' or 'tree' include whose
+	 * directory gained or lost a matching file. A change to the build.json file affects every package, and
+	 * the output files of the packages are ignored.
+	 *
+	 * @param changedFiles The changed files.
+	 * @param projectFile The build.json file that the Project was loaded from.
+	 * @return The affected packages, in the order they are listed in the build.json file.
+	 */
+	public List<Package> getAffectedPackages( Collection<File> changedFiles, File projectFile ) {
+		Set<File> outputFiles = new HashSet<File>();
+		for( Package pkg : pkgs ) {
+			for( File outputFile : pkg.getOutputFiles() ) {
+				outputFiles.add( FileHelper.normalize( outputFile ) );
+			}
+		}
+
+		Set<File> files = new LinkedHashSet<File>();
+		for( File changedFile : changedFiles ) {
+			File file = FileHelper.normalize( changedFile );
+			if( file.equals( FileHelper.normalize( projectFile ) ) ) {
+				return pkgs;
+			}
+			if( !outputFiles.contains( file ) ) {
+				files.add( file );
+			}
+		}
+
+		// Map each file that is included in the Project to the packages that include it
+		Set<Package> affectedPkgs = new HashSet<Package>();
+		Map<File, List<Package>> pkgsByFile = new HashMap<File, List<Package>>();
+		for( Package pkg : pkgs ) {
+			try {
+				Set<File> pkgFiles = new LinkedHashSet<File>( pkg.getFiles() );
+				pkgFiles.addAll( pkg.getDependencies() );
+				for( File file : pkgFiles ) {
+					File key = FileHelper.normalize( file );
+					List<Package> filePkgs = pkgsByFile.get( key );
+					if( filePkgs == null ) {
+						filePkgs = new ArrayList<Package>();
+						pkgsByFile.put( key, filePkgs );
+					}
+					filePkgs.add( pkg );
+				}
+
+			} catch( BuildFileException | IOException ex ) {
+				affectedPkgs.add( pkg );  // i.e. a 'file' include's file was deleted. The build reports the error
+			}
+		}
+
+		for( File file : files ) {
+			List<Package> filePkgs = pkgsByFile.get( file );
+			if( filePkgs != null ) {
+				affectedPkgs.addAll( filePkgs );
+				continue;
+			}
+
+			// Not currently included: an added or deleted file (or a file which is not part of the Project at all)
+			for( Package pkg : pkgs ) {
+				for( Include include : pkg.getIncludes() ) {
+					if( include.matches( file ) ) {
+						affectedPkgs.add( pkg );
+						break;
+					}
+				}
+			}
+		}
+
+		List<Package> orderedPkgs = new ArrayList<Package>();
+		for( Package pkg : pkgs ) {
+			if( affectedPkgs.contains( pkg ) ) {
+				orderedPkgs.add( pkg );
+			}
+		}
+		return orderedPkgs;
+	}
+
+
+	/**
+	 * Retrieves the index of directory listings that is shared by all of the Project's packages.
+	 *
+	 * @return The index.
+	 */
+	public FileIndex getFileIndex() {
+		return fileIndex;
+	}
+
+
+	/**
+	 * Retrieves the profile of the Project's last build.
+	 *
+	 * @return The profile, or null if the build was not profiled (see {@link BuildOptions#setProfile}).
+	 */
+	public BuildProfile getProfile() {
+		return profile;
+	}
+
+
+	/**
+	 * Sets the index of directory listings that is shared by all of the Project's packages, so that
+	 * a long-running process can keep the listings between builds.
+	 *
+	 * @param fileIndex The index.
+	 */
+	public void setFileIndex( FileIndex fileIndex ) {
+		this.fileIndex = fileIndex;
+		for( Package pkg : pkgs ) {
+			pkg.setFileIndex( fileIndex );
+		}
+	}
+
+
+	/**
+	 * Sets the cache of file contents that all of the Project's packages read their files through. By default,
+	 * each Project has its own cache (except in low memory mode), which this replaces.
+	 *
+	 * @param contentsCache The cache, or null to always read files from disk.
+	 */
+	public void setFileContentsCache( FileContentsCache contentsCache ) {
+		for( Package pkg : pkgs ) {
+			pkg.setFileContentsCache( contentsCache );
+		}
+	}
+
+
+	/**
+	 * Retrieves the license header that is written at the top of each output file.
+	 *
+	 * @return The license header.
+	 */
+	public String getLicenseHeader() {
+		return licenseHeader;
+	}
+
+
+	/**
+	 * Compiles and outputs the project's concatenated and minified files.
+	 */
+	public void writeOutput() throws IOException {
+		writeOutput( pkgs );
+	}
+
+
+	/**
+	 * Compiles and outputs the concatenated and minified files of the given packages of the project.
+	 *
+	 * @param pkgs The packages to build, which must belong to this Project.
+	 */
+	public void writeOutput( List<Package> pkgs ) throws IOException {
+		// Make the output directory if it doesn't yet exist
+		File deployDir = new File( buildOptions.getOutputDir() );
+		deployDir.mkdirs();
+
+		fileIndex.removeStale();  // re-list the directories which have changed since they were last listed
+
+		profile = null;
+		if( buildOptions.getProfile() ) {
+			profile = new BuildProfile();
+			for( Package pkg : pkgs ) {
+				pkg.setProfile( profile.addPackage( pkg.getName() ) );
+			}
+		}
+
+		// In low memory mode, packages are built one at a time, so that only one package's buffers are held at once,
+		// and the peak heap usage that each package reports is measured while no other package is being built
+		int jobs = buildOptions.getLowMemory() ? 1 : Math.min( buildOptions.getJobs(), pkgs.size() );
+		if( jobs > 1 ) {
+			writeOutputParallel( pkgs, jobs );
+
+		} else {
+			// Write out the contents of each package
+			for( Package pkg : pkgs ) {
+				pkg.writeOutput( licenseHeader );
+			}
+		}
+
+		if( minifyCache != null && buildOptions.getVerbose() ) {
+			System.out.println( "Minify cache: " + minifyCache.getHits() + " hit(s), " + minifyCache.getMisses() + " miss(es)" );
+		}
+		if( actionCache != null && buildOptions.getVerbose() ) {
+			System.out.println( "Action cache: " + actionCache.getHits() + " hit(s), " + actionCache.getMisses() + " miss(es)" );
+		}
+
+		if( profile != null ) {
+			reportProfile();
+		}
+	}
+
+
+	/**
+	 * Prints the profile of the build, writes its JSON report, and compares it with the baseline report,
+	 * as set in the {@link BuildOptions}. Regressions are printed, and are available from the profile's
+	 * {@link BuildProfile#getRegressions()}, so that the caller can fail the build.
+	 *
+	 * @throws IOException If the report could not be written, or the baseline could not be read.
+	 */
+	private void reportProfile() throws IOException {
+		profile.finish();
+		profile.printSummary( System.out );
+
+		if( buildOptions.getProfileReport() != null ) {
+			File reportFile = new File( buildOptions.getProfileReport() );
+			profile.writeReport( reportFile );
+			System.out.println( "Wrote profile report: " + reportFile.getAbsolutePath() );
+		}
+
+		if( buildOptions.getProfileBaseline() != null ) {
+			List<String> regressions = profile.compareWith( new File( buildOptions.getProfileBaseline() ), buildOptions.getProfileThreshold() );
+			if( !regressions.isEmpty() ) {
+				System.err.println( regressions.size() + " phase(s) regressed by more than " + buildOptions.getProfileThreshold() + "% from the profile baseline:" );
+				for( String regression : regressions ) {
+					System.err.println( "    " + regression );
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Writes out the contents of the project's packages using a pool of worker threads.
+	 *
+	 * Each package logs into its own buffers while it is being built, and the buffers are then
+	 * printed in the order that the packages are listed in the build.json file, so that the
+	 * output of the packages never interleaves. If any packages fail, all of the failures are
+	 * reported (again in build.json order) once every package has finished, and the first
+	 * failure is re-thrown.
+	 *
+	 * @param pkgs The packages to build.
+	 * @param jobs The number of packages to build at the same time.
+	 * @throws IOException If a package's file(s) could not be read or written.
+	 */
+	private void writeOutputParallel( List<Package> pkgs, int jobs ) throws IOException {
+		ExecutorService executor = ThreadHelper.newFixedThreadPool( jobs, "package" );
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		List<ByteArrayOutputStream> outBuffers = new ArrayList<ByteArrayOutputStream>();
+		List<ByteArrayOutputStream> errBuffers = new ArrayList<ByteArrayOutputStream>();
+
+		try {
+			for( final Package pkg : pkgs ) {
+				ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+				ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+				outBuffers.add( outBuffer );
+				errBuffers.add( errBuffer );
+				pkg.setLogStreams( new PrintStream( outBuffer, true ), new PrintStream( errBuffer, true ) );
+
+				futures.add( executor.submit( new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						pkg.writeOutput( licenseHeader );
+						return null;
+					}
+				} ) );
+			}
+
+			// Wait for each package in order, printing its log as soon as it (and every package before it) is done
+			Map<Package, Throwable> failures = new LinkedHashMap<Package, Throwable>();
+			for( int i = 0, len = pkgs.size(); i < len; i++ ) {
+				try {
+					futures.get( i ).get();
+
+				} catch( ExecutionException ex ) {
+					failures.put( pkgs.get( i ), ex.getCause() );
+
+				} catch( InterruptedException ex ) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException( "Interrupted while waiting for package '" + pkgs.get( i ).getName() + "' to build" );
+				}
+
+				System.out.print( outBuffers.get( i ).toString() );
+				System.err.print( errBuffers.get( i ).toString() );
+				pkgs.get( i ).setLogStreams( System.out, System.err );
+			}
+
+			if( !failures.isEmpty() ) {
+				System.err.println( failures.size() + " package(s) failed to build:" );
+				for( Map.Entry<Package, Throwable> failure : failures.entrySet() ) {
+					System.err.println( "    '" + failure.getKey().getName() + "': " + failure.getValue() );
+				}
+				ThreadHelper.rethrow( failures.values().iterator().next() );
+			}
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	/**
+	 * Creates the license header from the licenseText provided in the build.json file.
+	 *
+	 * @return
+	 */
+	private String createLicenseHeader() {
+		StringBuilder headerBuilder = new StringBuilder();
+		String[] licTextArray = licenseText.split( "\n" );
+		String lineSeparator = System.getProperty( "line.separator" );
+
+		headerBuilder.append( "/*!" );
+		headerBuilder.append( lineSeparator );
+		for( String line : licTextArray ) {
+			headerBuilder.append( " * " );
+			headerBuilder.append( line );
+			headerBuilder.append( lineSeparator );
+		}
+		headerBuilder.append( " */" );
+		headerBuilder.append( lineSeparator );
+
+		return headerBuilder.toString();
+	}
+
+}
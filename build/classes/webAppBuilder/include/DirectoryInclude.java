@@ -0,0 +1,106 @@
+package webAppBuilder.include;
+
+import java.util.*;
+import java.io.*;
+import webAppBuilder.BuildOptions;
+import webAppBuilder.BuildFileException;
+import webAppBuilder.FileHelper;
+import webAppBuilder.pkg.Package;
+
+
+/**
+ * Represents a single, non-recursive, directory include.
+ */
+public class DirectoryInclude extends Include {
+
+	protected File directory;
+	protected BuildOptions buildOptions;
+	protected String fileExtension;
+	protected PathPatterns pathPatterns;
+
+
+	/**
+	 * Creates a "directory include" directive.
+	 */
+	public DirectoryInclude( Package pkg, String directory, BuildOptions buildOptions, String fileExtension ) {
+		this( pkg, directory, buildOptions, fileExtension, new ArrayList<String>(), new ArrayList<String>() );
+	}
+
+
+	/**
+	 * Creates a "directory include" directive, with glob patterns to filter its files.
+	 *
+	 * @param includePatterns The glob patterns that files must match at least one of to be included. If empty, all
+	 *   files with the fileExtension are included.
+	 * @param excludePatterns The glob patterns of files (and, for a tree, directories) to exclude.
+	 * @see PathPatterns
+	 */
+	public DirectoryInclude( Package pkg, String directory, BuildOptions buildOptions, String fileExtension, List<String> includePatterns, List<String> excludePatterns ) {
+		super( pkg );
+
+		this.directory = new File( directory );
+
+		// If the directory is a relative path, we must add the build.json file's directory,
+		// as the directory should be relative to the build.json, and not the current working directory
+		if( !this.directory.isAbsolute() ) {
+			this.directory = new File( buildOptions.getBuildFileDir() + directory );
+		}
+
+		this.buildOptions = buildOptions;
+		this.fileExtension = fileExtension;
+		this.pathPatterns = new PathPatterns( this.directory, includePatterns, excludePatterns );
+	}
+
+
+	/**
+	 * Retrieves the collection of files that the DirectoryInclude represents.
+	 *
+	 * @return The Collection of files in the directory.
+	 * @throws BuildFileException If the directory that is referred to by this include does not exist.
+	 */
+	@Override
+	public Collection<File> getFiles() {
+		try {
+			return pkg.getFileIndex().listDirectoryFiles( directory, new ExtensionFilenameFilter(), /* recurse */ false );
+
+		} catch( FileNotFoundException ex ) {
+			throw new BuildFileException( "The directory referred to by a 'directory' include in the package '" + pkg.getName() + "' was not found. See cause.", ex );
+		}
+	}
+
+	/**
+	 * Retrieves the directory that the DirectoryInclude represents.
+	 *
+	 * @return The directory, in a Collection.
+	 */
+	@Override
+	public Collection<File> getDirectories() {
+		List<File> list = new LinkedList<File>();
+		list.add( directory );
+		return list;
+	}
+
+	/**
+	 * Determines if the given file is (or would be) in the DirectoryInclude's directory, and accepted by its filter.
+	 *
+	 * @param file The normalized absolute path of the file.
+	 * @return True if the file is (or would be) one of the DirectoryInclude's files.
+	 */
+	@Override
+	public boolean matches( File file ) {
+		File dir = file.getParentFile();
+		return FileHelper.normalize( directory ).equals( dir ) && new ExtensionFilenameFilter().accept( dir, file.getName() );
+	}
+
+	/**
+	 * The FilenameFilter for only accepting files with the fileExtension provided
+	 * to the DirectoryInclude, which are also accepted by its include / exclude patterns.
+	 */
+	protected class ExtensionFilenameFilter implements FilenameFilter {
+		@Override
+		public boolean accept( File dir, String name ) {
+			return name.endsWith( fileExtension ) && ( pathPatterns.isEmpty() || pathPatterns.acceptsFile( new File( dir, name ) ) );
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package webAppBuilder.include;
+
+import java.util.*;
+import java.io.*;
+import org.json.*;
+import webAppBuilder.BuildOptions;
+import webAppBuilder.pkg.Package;
+
+/**
+ * Represents an include directive that the user can provide.
+ */
+public abstract class Include {
+	
+	protected Package pkg;  // the Package that this Include belongs to
+
+	/**
+	 * Factory method to create the correct {@link Include} directive class for the given
+	 * JSON data.
+	 *
+	 * @param pkg The Package that this Include belongs to.
+	 * @param includeJSON The JSON representation of the given include.
+	 * @param buildOptions The options for the build.
+	 * @param fileExtension The file extension for the package output file, which determines the file
+	 *   filter for the {@link Include}.
+	 * @return The proper {@link Include} subclass, or null if one was not found for the given JSON.
+	 * @throws FileNotFoundException
+	 */
+	public static Include fromJSON( Package pkg, JSONObject includeJSON, BuildOptions buildOptions, String fileExtension ) throws JSONException {
+		if( includeJSON.has( "file" ) ) {
+			return new FileInclude( pkg, includeJSON.getString( "file" ), buildOptions );
+
+		} else if( includeJSON.has( "directory" ) ) {
+			return new DirectoryInclude( pkg, includeJSON.getString( "directory" ), buildOptions, fileExtension,
+				getStringList( includeJSON, "include" ), getStringList( includeJSON, "exclude" ) );
+
+		} else if( includeJSON.has( "tree" ) ) {
+			return new TreeInclude( pkg, includeJSON.getString( "tree" ), buildOptions, fileExtension,
+				getStringList( includeJSON, "include" ), getStringList( includeJSON, "exclude" ) );
+
+		} else {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Retrieves an optional array of strings from an include directive's JSON.
+	 *
+	 * @param includeJSON The JSON representation of the include.
+	 * @param key The key of the array.
+	 * @return The strings in the array, or an empty list if the key is not present.
+	 * @throws JSONException If the key is present, but its value is not an array of strings.
+	 */
+	protected static List<String> getStringList( JSONObject includeJSON, String key ) throws JSONException {
+		List<String> strings = new ArrayList<String>();
+
+		if( includeJSON.has( key ) ) {
+			JSONArray arr = includeJSON.getJSONArray( key );
+			for( int i = 0, len = arr.length(); i < len; i++ ) {
+				strings.add( arr.getString( i ) );
+			}
+		}
+		return strings;
+	}
+
+
+	/**
+	 * Constructs an Include directive.
+	 *
+	 * @param pkg The parent Package of this Include directive.
+	 */
+	public Include( Package pkg ) {
+		this.pkg = pkg;
+	}
+
+
+	/**
+	 * Retrieves the list of files for the include directive.
+	 *
+	 * @return The Collection of file(s) that the Include directive represents.
+	 */
+	public abstract Collection<File> getFiles();
+
+
+	/**
+	 * Retrieves the directories that the include directive's files are read from, so that they
+	 * may be watched for changes.
+	 *
+	 * @return The Collection of directories that the Include directive reads from.
+	 */
+	public abstract Collection<File> getDirectories();
+
+
+	/**
+	 * Determines if the include directive includes (or would include) the given file, whether or not the
+	 * file exists, so that files which have been added or deleted can be matched to the includes they
+	 * affect.
+	 *
+	 * @param file The normalized absolute path of the file (see {@link webAppBuilder.FileHelper#normalize(File)}).
+	 * @return True if the file is (or would be) one of the include directive's files.
+	 */
+	public abstract boolean matches( File file );
+
+}
@@ -0,0 +1,606 @@
+package webAppBuilder.pkg;
+
+import java.util.*;
+import java.io.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.*;
+import webAppBuilder.AssetInliner;
+import webAppBuilder.BuildOptions;
+import webAppBuilder.CssOptimizer;
+import webAppBuilder.FileHelper;
+import webAppBuilder.MinifyCache;
+import webAppBuilder.ThreadHelper;
+import webAppBuilder.include.Include;
+import org.mozilla.javascript.*;
+import com.yahoo.platform.yui.compressor.*;
+
+/**
+ * Represents a package of CSS files to be concatenated and minified.
+ */
+public class CSSPackage extends Package {
+
+	// The options that the CssCompressor is run with
+	private static final int LINEBREAKPOS = -1;  // no line breaking
+
+	private static final String COMPRESSOR_SIGNATURE = "CssCompressor:" + MinifyCache.fingerprintClass( CssCompressor.class )
+		+ ";linebreakpos=" + LINEBREAKPOS;
+
+	// An @import statement: its URL (in one of groups 1 to 5, for each way of quoting it), and its media queries (group 6)
+	private static final Pattern IMPORT_PATTERN = Pattern.compile( "@import\\s+(?:url\\(\\s*(?:'([^']*)'|\"([^\"]*)\"|([^'\"()\\s]*))\\s*\\)"
+		+ "|'([^']*)'|\"([^\"]*)\")\\s*([^;{}]*);", Pattern.CASE_INSENSITIVE );
+	// A url(): its URL, in one of groups 1 to 3, for each way of quoting it
+	private static final Pattern URL_PATTERN = Pattern.compile( "url\\(\\s*(?:'([^']*)'|\"([^\"]*)\"|([^'\"()\\s]*))\\s*\\)", Pattern.CASE_INSENSITIVE );
+	private static final Pattern URL_SCHEME_PATTERN = Pattern.compile( "[A-Za-z][A-Za-z0-9+.-]*:" );  // i.e. "data:", "https:"
+	private static final Pattern UNQUOTABLE_URL_PATTERN = Pattern.compile( "[\\s'\"()]" );  // chars which an unquoted url() can't have
+	private static final Pattern CHARSET_PATTERN = Pattern.compile( "^\\s*@charset\\s+[^;]*;\\s*", Pattern.CASE_INSENSITIVE );
+	private static final Pattern COMMENT_PATTERN = Pattern.compile( "/\\*.*?\\*/", Pattern.DOTALL );
+
+	// The transformed contents of the package's files, and the files that they were transformed with, for the
+	// current build (until the package is reset). Null until they are first needed
+	private Map<File, String> transformedContents;
+	private Set<File> dependencies;
+	private String transformLog;
+
+	private String optimizedContents;  // the minified contents after the CssOptimizer, for the current build
+
+	/**
+	 * Creates a CssPackage.
+	 */
+	public CSSPackage( String name, String filename, BuildOptions buildOptions ) {
+		super( name, filename, buildOptions );
+	}
+
+	/**
+	 * Creates a CssPackage.
+	 */
+	public CSSPackage( String name, String filename, List<Include> includes, BuildOptions buildOptions ) {
+		super( name, filename, includes, buildOptions );
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getCompressorSignature() {
+		return COMPRESSOR_SIGNATURE;
+	}
+
+	/**
+	 * Retrieves the contents of one of the package's files, transformed as set in the {@link BuildOptions}: with
+	 * its local @imports flattened into it (see {@link #transformFiles()}), and with the images and fonts that it
+	 * refers to inlined as data URIs (see {@link AssetInliner}). This is done before the contents are combined and
+	 * compressed, as each file's @imports and url()s are relative to the file itself.
+	 *
+	 * @param file The file to read.
+	 * @return The contents of the file.
+	 * @throws IOException If the file, or a file that it refers to, could not be read.
+	 */
+	@Override
+	protected String getFileContents( File file ) throws IOException {
+		if( !transformsContents() ) {
+			return readFile( file );
+		}
+
+		Map<File, String> contents = transformFiles();
+		synchronized( this ) {
+			if( transformLog != null ) {
+				getOut().print( transformLog );  // once the package's output is being written
+				transformLog = null;
+			}
+		}
+		return contents.get( file );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean transformsContents() {
+		return getBuildOptions().getFlattenImports() || getBuildOptions().getInlineAssetLimit() > 0 || getBuildOptions().getOptimizeCss();
+	}
+
+	/**
+	 * Retrieves the files that the package's files @import, and the images and fonts that they refer to, if
+	 * @imports are being flattened or assets are being inlined.
+	 *
+	 * @return The files, in order.
+	 * @throws IOException If one of the package's files could not be read.
+	 */
+	@Override
+	public Collection<File> getDependencies() throws IOException {
+		if( !transformsContents() ) {
+			return super.getDependencies();
+		}
+
+		transformFiles();
+		return dependencies;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void reset() {
+		super.reset();
+		transformedContents = null;
+		dependencies = null;
+		transformLog = null;
+		optimizedContents = null;
+	}
+
+	/**
+	 * Retrieves the minified contents of the package, after the {@link CssOptimizer} if the "optimizeCss" flag is set
+	 * in the {@link BuildOptions}. The optimizer runs on the compressed stylesheet as a whole (however it was compressed),
+	 * so that duplicate rules are found across all of the package's files, and reports the number of bytes that it saved.
+	 *
+	 * @throws IOException If there is an error creating the minified contents.
+	 */
+	@Override
+	public synchronized String getMinifiedContents() throws IOException {
+		if( !getBuildOptions().getOptimizeCss() ) {
+			return super.getMinifiedContents();
+		}
+
+		if( optimizedContents == null ) {
+			String minifiedContents = super.getMinifiedContents();
+			CssOptimizer optimizer = new CssOptimizer();
+			optimizedContents = optimizer.optimize( minifiedContents );
+			getOut().println( "    Optimized CSS: removed " + optimizer.getRemovedRules() + " duplicate rule(s), merged " + optimizer.getMergedRules()
+				+ " rule(s), saved " + ( minifiedContents.length() - optimizedContents.length() ) + " bytes" );
+		}
+		return optimizedContents;
+	}
+
+	/**
+	 * Transforms the contents of all of the package's files, once per build. The files are transformed together,
+	 * as flattening their @imports depends on the package as a whole:
+	 *
+	 * - Each local @import is replaced with the contents of the file that it refers to (which are flattened in
+	 *   turn), wrapped in an @media block if the @import has media queries. The relative url()s of an imported
+	 *   file are rebased onto the directory of the package's output files, so that they still refer to the same
+	 *   files once they are in the output.
+	 * - Only the @imports at the top of a file (after its @charset rule, if any) are flattened. An @import which
+	 *   comes after any other rule is ignored by browsers, so it is left as it is, with a warning.
+	 * - A file is only included once: an @import of a file which is one of the package's own files, or which was
+	 *   already imported, is removed. A circular @import is removed with a warning.
+	 * - An @import which can't be resolved to a local file (i.e. of a URL with a scheme, or a root-relative path)
+	 *   is moved to the top of the package's output, as @imports are ignored after any other rule.
+	 *
+	 * @return The transformed contents, by file.
+	 * @throws IOException If a file could not be read.
+	 */
+	private synchronized Map<File, String> transformFiles() throws IOException {
+		if( transformedContents != null ) {
+			return transformedContents;
+		}
+
+		Set<File> files = getBuildFiles();
+		Set<File> includedFiles = new HashSet<File>();
+		for( File file : files ) {
+			includedFiles.add( FileHelper.normalize( file ) );
+		}
+		List<String> hoistedImports = new ArrayList<String>();
+		Set<File> fileDependencies = new LinkedHashSet<File>();
+		ByteArrayOutputStream logBytes = new ByteArrayOutputStream();
+		PrintStream log = Boolean.TRUE.equals( getBuildOptions().getVerbose() ) ? new PrintStream( logBytes, true ) : null;
+
+		Map<File, String> contents = new HashMap<File, String>();
+		for( File file : files ) {
+			LinkedList<File> chain = new LinkedList<File>( Collections.singletonList( FileHelper.normalize( file ) ) );
+			contents.put( file, transformFile( file, readFile( file ), null, chain, includedFiles, hoistedImports, fileDependencies, log ) );
+		}
+
+		if( !hoistedImports.isEmpty() ) {
+			File firstFile = files.iterator().next();
+			contents.put( firstFile, insertImports( contents.get( firstFile ), hoistedImports ) );
+		}
+
+		transformedContents = contents;
+		dependencies = fileDependencies;
+		transformLog = ( log != null && logBytes.size() > 0 ) ? logBytes.toString() : null;
+		return transformedContents;
+	}
+
+	/**
+	 * Transforms the contents of a file, and flattens the files that it @imports into it.
+	 *
+	 * @param file The file.
+	 * @param css The contents of the file.
+	 * @param media The media queries of the @import that the file was imported with, or null.
+	 * @param chain The (normalized) files that were imported to get to the file, starting with one of the
+	 *   package's files, and ending with the file itself.
+	 * @param includedFiles The (normalized) files which have been included in the package so far. Updated.
+	 * @param hoistedImports The @imports to move to the top of the package's output. Updated.
+	 * @param fileDependencies The files that the package's output is transformed with. Updated.
+	 * @param log The stream to print what was transformed to, or null to not print it.
+	 * @return The transformed contents.
+	 * @throws IOException If a file could not be read.
+	 */
+	private String transformFile( File file, String css, String media, LinkedList<File> chain, Set<File> includedFiles,
+		List<String> hoistedImports, Set<File> fileDependencies, PrintStream log
+	) throws IOException {
+		int inlineAssetLimit = getBuildOptions().getInlineAssetLimit();
+		if( inlineAssetLimit > 0 ) {
+			fileDependencies.addAll( AssetInliner.findAssets( css, file ) );
+			css = AssetInliner.getSharedInliner().inline( css, file, inlineAssetLimit, log );
+		}
+		if( !getBuildOptions().getFlattenImports() ) {
+			return css;
+		}
+
+		// The url()s of an imported file are relative to it. Those of the package's own files are left as they are
+		boolean imported = ( chain.size() > 1 );
+		File outputDir = FileHelper.normalize( getOutputFiles().get( 0 ) ).getParentFile();
+
+		List<int[]> comments = findComments( css );
+		int importsEnd = findImportsEnd( css );
+		Matcher matcher = IMPORT_PATTERN.matcher( css );
+		StringBuilder flattenedCss = new StringBuilder( css.length() );
+		int end = 0;  // the end of the last @import
+		while( matcher.find() ) {
+			if( isInComment( matcher.start(), comments ) ) {
+				continue;
+			}
+
+			String url = getImportUrl( matcher );
+			if( matcher.start() >= importsEnd ) {
+				getErr().println( "    Warning: the @import of '" + url + "' in " + file.getPath() + " comes after other rules, so browsers ignore it. It was left as it is" );
+				continue;
+			}
+			String importMedia = matcher.group( 6 ).trim();
+			File importedFile = resolveImport( url, file );
+			String replacement = "";
+
+			if( importedFile == null || !importedFile.isFile() ) {
+				if( importedFile != null ) {
+					getErr().println( "    Warning: the file '" + url + "' that " + file.getPath() + " imports was not found, so its @import was left as it is" );
+				}
+				String statement = matcher.group();
+				if( importMedia.isEmpty() && media != null ) {
+					statement = statement.substring( 0, statement.length() - 1 ).trim() + " " + media + ";";  // keep the media queries that its file was imported with
+				}
+				if( !hoistedImports.contains( statement ) ) {
+					hoistedImports.add( statement );
+				}
+
+			} else if( chain.contains( FileHelper.normalize( importedFile ) ) ) {
+				getErr().println( "    Warning: circular @import of " + importedFile.getPath() + " in " + file.getPath() + " (" + describeChain( chain, importedFile ) + "), which was left out" );
+
+			} else if( includedFiles.add( FileHelper.normalize( importedFile ) ) ) {
+				fileDependencies.add( importedFile );
+				String importedMedia = importMedia.isEmpty() ? media : importMedia;
+				chain.addLast( FileHelper.normalize( importedFile ) );
+				String importedCss = CHARSET_PATTERN.matcher( readFile( importedFile ) ).replaceFirst( "" );  // only allowed at the start of the output
+				importedCss = transformFile( importedFile, importedCss, importedMedia, chain, includedFiles, hoistedImports, fileDependencies, log );
+				chain.removeLast();
+
+				String lineSeparator = System.getProperty( "line.separator" );
+				replacement = importMedia.isEmpty() ? importedCss : "@media " + importMedia + " {" + lineSeparator + importedCss + lineSeparator + "}";
+				if( log != null ) {
+					log.println( "    Flattened: @import of " + importedFile.getPath() + " into " + file.getName() + ( importMedia.isEmpty() ? "" : " (" + importMedia + ")" ) );
+				}
+			}
+			String ownCss = css.substring( end, matcher.start() );
+			flattenedCss.append( imported ? rebaseUrls( ownCss, file, outputDir ) : ownCss ).append( replacement );  // the replacement is rebased already
+			end = matcher.end();
+		}
+		String ownCss = css.substring( end );
+		flattenedCss.append( imported ? rebaseUrls( ownCss, file, outputDir ) : ownCss );
+		return flattenedCss.toString();
+	}
+
+	/**
+	 * Rebases the relative url()s of a stylesheet from the stylesheet's directory onto another directory, so
+	 * that they refer to the same files from there. Data URIs, URLs with a scheme, root-relative paths, and
+	 * fragment-only URLs are left as they are, and a URL's query and fragment are kept.
+	 *
+	 * @param css The contents of the stylesheet (or a part of it).
+	 * @param file The stylesheet, which the url()s are relative to.
+	 * @param dir The normalized absolute path of the directory to rebase the url()s onto.
+	 * @return The contents of the stylesheet, with the url()s rebased.
+	 */
+	private static String rebaseUrls( String css, File file, File dir ) {
+		Matcher matcher = URL_PATTERN.matcher( css );
+		StringBuffer rebasedCss = null;  // only created once a url() is rebased
+
+		while( matcher.find() ) {
+			int group = ( matcher.group( 1 ) != null ) ? 1 : ( matcher.group( 2 ) != null ) ? 2 : 3;
+			String url = matcher.group( group ).trim();
+			if( url.isEmpty() || url.startsWith( "/" ) || url.startsWith( "#" ) || URL_SCHEME_PATTERN.matcher( url ).lookingAt() ) {
+				continue;
+			}
+
+			int suffixStart = url.length();  // the start of the query or fragment, if any
+			for( char c : new char[] { '?', '#' } ) {
+				if( url.indexOf( c ) != -1 ) {
+					suffixStart = Math.min( suffixStart, url.indexOf( c ) );
+				}
+			}
+			File target = FileHelper.normalize( new File( file.getAbsoluteFile().getParentFile(), url.substring( 0, suffixStart ).replace( '/', File.separatorChar ) ) );
+			String rebasedUrl;
+			try {
+				rebasedUrl = dir.toPath().relativize( target.toPath() ).toString().replace( File.separatorChar, '/' ) + url.substring( suffixStart );
+			} catch( IllegalArgumentException ex ) {
+				continue;  // on another drive than the output, so there is no relative path to it
+			}
+
+			String quote = ( group == 1 ) ? "'" : ( group == 2 || UNQUOTABLE_URL_PATTERN.matcher( rebasedUrl ).find() ) ? "\"" : "";
+			if( rebasedCss == null ) {
+				rebasedCss = new StringBuffer( css.length() );
+			}
+			matcher.appendReplacement( rebasedCss, Matcher.quoteReplacement( "url(" + quote + rebasedUrl + quote + ")" ) );
+		}
+
+		if( rebasedCss == null ) {
+			return css;
+		}
+		matcher.appendTail( rebasedCss );
+		return rebasedCss.toString();
+	}
+
+	/**
+	 * Inserts @import statements at the top of a stylesheet, after its @charset rule if it has one.
+	 *
+	 * @param css The stylesheet.
+	 * @param imports The @import statements.
+	 * @return The stylesheet with the statements inserted.
+	 */
+	private static String insertImports( String css, List<String> imports ) {
+		String lineSeparator = System.getProperty( "line.separator" );
+		StringBuilder importsCss = new StringBuilder();
+		for( String statement : imports ) {
+			importsCss.append( statement ).append( lineSeparator );
+		}
+
+		Matcher charsetMatcher = CHARSET_PATTERN.matcher( css );
+		int insertAt = charsetMatcher.find() ? charsetMatcher.end() : 0;
+		return css.substring( 0, insertAt ) + importsCss + css.substring( insertAt );
+	}
+
+	/**
+	 * Retrieves the URL of an @import match, from whichever of the quoted or unquoted groups matched.
+	 *
+	 * @param matcher The matcher, at a match.
+	 * @return The URL.
+	 */
+	private static String getImportUrl( Matcher matcher ) {
+		for( int i = 1; i <= 5; i++ ) {
+			if( matcher.group( i ) != null ) {
+				return matcher.group( i ).trim();
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Resolves the URL of an @import to a local file, relative to the file that it is in.
+	 *
+	 * @param url The URL.
+	 * @param file The file which has the @import.
+	 * @return The file (which may not exist), or null if the URL is not a relative path.
+	 */
+	private static File resolveImport( String url, File file ) {
+		if( url.isEmpty() || url.startsWith( "/" ) || url.indexOf( ':' ) != -1 || url.indexOf( '?' ) != -1 || url.indexOf( '#' ) != -1 ) {
+			return null;
+		}
+		return FileHelper.normalize( new File( file.getAbsoluteFile().getParentFile(), url.replace( '/', File.separatorChar ) ) );
+	}
+
+	/**
+	 * Finds the end of the @import rules at the top of a stylesheet, which may only come after its @charset rule
+	 * (and comments). Browsers ignore an @import which comes after any other rule.
+	 *
+	 * @param css The stylesheet.
+	 * @return The index of the first rule after the @imports, or the length of the stylesheet if there is none.
+	 */
+	private static int findImportsEnd( String css ) {
+		Matcher charsetMatcher = CHARSET_PATTERN.matcher( css );
+		int i = charsetMatcher.lookingAt() ? charsetMatcher.end() : 0;
+
+		Matcher importMatcher = IMPORT_PATTERN.matcher( css );
+		while( i < css.length() ) {
+			if( Character.isWhitespace( css.charAt( i ) ) ) {
+				i++;
+			} else if( css.startsWith( "/*", i ) ) {
+				int end = css.indexOf( "*/", i + 2 );
+				i = ( end == -1 ) ? css.length() : end + 2;
+			} else if( importMatcher.region( i, css.length() ).lookingAt() ) {
+				i = importMatcher.end();
+			} else {
+				break;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the comments in a stylesheet, so that @imports which are commented out are left alone.
+	 *
+	 * @param css The stylesheet.
+	 * @return The start and end index of each comment.
+	 */
+	private static List<int[]> findComments( String css ) {
+		List<int[]> comments = new ArrayList<int[]>();
+		Matcher matcher = COMMENT_PATTERN.matcher( css );
+		while( matcher.find() ) {
+			comments.add( new int[] { matcher.start(), matcher.end() } );
+		}
+		return comments;
+	}
+
+	/**
+	 * Determines if an index of a stylesheet is in one of its comments.
+	 *
+	 * @param index The index.
+	 * @param comments The comments, from {@link #findComments(String)}.
+	 * @return True if the index is in a comment.
+	 */
+	private static boolean isInComment( int index, List<int[]> comments ) {
+		for( int[] comment : comments ) {
+			if( index >= comment[ 0 ] && index < comment[ 1 ] ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Describes a chain of @imports which ends in a circular @import, such as "a.css -> b.css -> a.css".
+	 *
+	 * @param chain The files that were imported to get to the circular @import.
+	 * @param importedFile The file that the circular @import refers to.
+	 * @return The description.
+	 */
+	private static String describeChain( List<File> chain, File importedFile ) {
+		StringBuilder description = new StringBuilder();
+		for( File file : chain ) {
+			description.append( file.getName() ).append( " -> " );
+		}
+		return description.append( importedFile.getName() ).toString();
+	}
+
+	/**
+	 * Compresses the output files
+	 * 
+	 * @param inputReader The reader of the combined (unminified) contents of the package's files
+	 * @param outputWriter The writer to write the minified contents to
+	 * @throws IOException
+	 */
+	@Override
+	public void writeMinifiedContents( Reader inputReader, Writer outputWriter ) throws IOException {
+		CssCompressor compressor = new CssCompressor( inputReader );
+		inputReader.close();
+		
+		// Compress the content
+		compressor.compress( outputWriter, LINEBREAKPOS );
+	}
+
+	/**
+	 * Creates the minified contents. If a CSS chunk size is set in the {@link BuildOptions}, contents which are
+	 * larger than the chunk size are split into chunks at top-level rule boundaries, and the chunks are compressed
+	 * in parallel, which is much faster for large stylesheets than running the CssCompressor's regular expressions
+	 * over the whole stylesheet. The CssCompressor only transforms each rule on its own, so the compressed chunks
+	 * are the same as the compressed stylesheet when they are concatenated. If the "verifyCssChunks" flag is set,
+	 * the stylesheet is also compressed as a whole, and the build fails if the results differ.
+	 *
+	 * @param combinedContents The combined contents of the files in the package.
+	 * @throws IOException If there is an error creating the minified contents, or the verification failed.
+	 */
+	@Override
+	public String createMinifiedContents( String combinedContents ) throws IOException {
+		int chunkSize = getBuildOptions().getCssChunkSize() * 1024;
+		if( chunkSize <= 0 || combinedContents.length() <= chunkSize ) {
+			return super.createMinifiedContents( combinedContents );
+		}
+
+		List<String> chunks = splitIntoChunks( combinedContents, chunkSize );
+		String minifiedContents = ( chunks.size() > 1 ) ? compressChunks( chunks ) : super.createMinifiedContents( combinedContents );
+
+		if( getBuildOptions().getVerifyCssChunks() ) {
+			String expectedContents = super.createMinifiedContents( combinedContents );
+			if( !expectedContents.equals( minifiedContents ) ) {
+				int i = 0;
+				while( i < expectedContents.length() && i < minifiedContents.length() && expectedContents.charAt( i ) == minifiedContents.charAt( i ) ) {
+					i++;
+				}
+				throw new IOException( "The chunked compression of the package '" + getName() + "' (" + chunks.size() + " chunks) differs from "
+					+ "compressing it as a whole, at character " + i + " of the output: '"
+					+ expectedContents.substring( Math.max( 0, i - 40 ), Math.min( expectedContents.length(), i + 40 ) ) + "'" );
+			}
+			getOut().println( "    Verified chunked CSS compression (" + chunks.size() + " chunks)" );
+		}
+		return minifiedContents;
+	}
+
+	/**
+	 * Compresses chunks of a stylesheet in parallel, and concatenates the results in order.
+	 *
+	 * @param chunks The chunks.
+	 * @return The compressed stylesheet.
+	 * @throws IOException If a chunk could not be compressed.
+	 */
+	private String compressChunks( List<String> chunks ) throws IOException {
+		int threads = Math.min( chunks.size(), Runtime.getRuntime().availableProcessors() );
+		ExecutorService executor = ThreadHelper.newFixedThreadPool( threads, "css" );
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		StringBuilder minifiedContents = new StringBuilder();
+
+		try {
+			for( final String chunk : chunks ) {
+				futures.add( executor.submit( new Callable<String>() {
+					@Override
+					public String call() throws IOException {
+						Writer outputWriter = new StringWriter();
+						new CssCompressor( new StringReader( chunk ) ).compress( outputWriter, LINEBREAKPOS );
+						return outputWriter.toString();
+					}
+				} ) );
+			}
+
+			for( Future<String> future : futures ) {
+				minifiedContents.append( ThreadHelper.getResult( future ) );
+			}
+
+		} finally {
+			executor.shutdownNow();
+		}
+		return minifiedContents.toString();
+	}
+
+	/**
+	 * Splits a stylesheet into chunks of at least the given size (except for the last one), at the ends of
+	 * top-level rules and blocks: a chunk only ends just after a '}' which closes a top-level rule (or at-rule
+	 * block, such as @media or @font-face), and which is not in a comment or a string.
+	 *
+	 * The CssCompressor's workaround for the IE5/Mac comment hack keeps the comment which follows a comment that
+	 * ends in a backslash, so the stylesheet is never split between those two comments.
+	 *
+	 * @param css The stylesheet.
+	 * @param chunkSize The minimum size of a chunk, in chars.
+	 * @return The chunks, in order.
+	 */
+	private static List<String> splitIntoChunks( String css, int chunkSize ) {
+		List<String> chunks = new ArrayList<String>();
+		int chunkStart = 0;
+		int depth = 0;
+		boolean inMacHack = false;
+
+		for( int i = 0, len = css.length(); i < len; i++ ) {
+			char c = css.charAt( i );
+
+			if( c == '/' && i + 1 < len && css.charAt( i + 1 ) == '*' ) {
+				int end = css.indexOf( "*/", i + 2 );
+				if( end == -1 ) {
+					break;  // an unterminated comment runs to the end of the stylesheet
+				}
+				inMacHack = ( end - 1 >= i + 2 && css.charAt( end - 1 ) == '\\' );  // until the next comment
+				i = end + 1;
+
+			} else if( c == '"' || c == '\'' ) {
+				for( i++; i < len && css.charAt( i ) != c && css.charAt( i ) != '\n'; i++ ) {
+					if( css.charAt( i ) == '\\' ) {
+						i++;  // skip the escaped character
+					}
+				}
+
+			} else if( c == '{' ) {
+				depth++;
+
+			} else if( c == '}' && depth > 0 ) {
+				depth--;
+				if( depth == 0 && !inMacHack && i + 1 - chunkStart >= chunkSize ) {
+					chunks.add( css.substring( chunkStart, i + 1 ) );
+					chunkStart = i + 1;
+				}
+			}
+		}
+
+		if( chunkStart < css.length() ) {
+			chunks.add( css.substring( chunkStart ) );
+		}
+		return chunks;
+	}
+	
+}
@@ -0,0 +1,179 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+
+/**
+ * An on-disk cache of whole-package builds, so that a package whose files and configuration are the same as
+ * those of an earlier build (on this machine, or on another machine that shares the cache directory) has its
+ * output files copied from the cache instead of being built again.
+ *
+ * Each entry is keyed by a hash of the contents of the package's files (in order) and of everything else that
+ * its output depends on (see {@link #createKey(String, Collection)}). An entry is made up of one file for each
+ * of the package's output files, named by the key and the output's index. Paths are not part of the key, so
+ * the cache directory may be shared between checkouts in different places, such as on an NFS mount that is
+ * shared by CI agents, or synced between them as an artifact.
+ *
+ * As with the {@link MinifyCache}, the entry files are stored, and evicted, by a {@link DirectoryCache}: each is
+ * written to a temporary file and then renamed, so that a concurrent reader never sees a partial entry, and the
+ * least recently used entry files are evicted once their total size exceeds the maximum size of the cache. An entry
+ * with an evicted output file is a miss, so the rest of its files are evicted in turn.
+ */
+public class ActionCache {
+
+	private static final String ENTRY_EXTENSION = ".out";
+
+	private DirectoryCache entries;
+
+	private AtomicInteger hits = new AtomicInteger();
+	private AtomicInteger misses = new AtomicInteger();
+
+
+	/**
+	 * Creates an ActionCache.
+	 *
+	 * @param cacheDir The directory to store the cache's entries in. Created if it does not yet exist.
+	 * @param maxSize The maximum total size of the cache's entries, in bytes.
+	 */
+	public ActionCache( File cacheDir, long maxSize ) {
+		this.entries = new DirectoryCache( cacheDir, ENTRY_EXTENSION, maxSize );
+	}
+
+
+	/**
+	 * Creates the key for a package's entry: the hex encoded SHA-256 hash of the package's configuration hash
+	 * and of the contents of each of its files, in order. Each file is hashed as it is read, so that its
+	 * contents are never held in memory.
+	 *
+	 * @param configHash The hash of everything other than the files that the package's output depends on (its
+	 *   definition, the license header, the compressor, the build options, and the version of the builder).
+	 * @param files The package's files, in order.
+	 * @return The key.
+	 * @throws IOException If a file could not be read.
+	 */
+	public static String createKey( String configHash, Collection<File> files ) throws IOException {
+		MessageDigest digest = FileHelper.createDigest();
+		digest.update( configHash.getBytes( "UTF-8" ) );
+		for( File file : files ) {
+			digest.update( (byte) 0 );
+			digest.update( FileHelper.hash( file ) );
+		}
+		return FileHelper.toHex( digest.digest() );
+	}
+
+
+	/**
+	 * Copies the output files of the entry for the given key out of the cache. The entry is only restored if
+	 * all of its output files are in the cache, and each output file is only written if its contents differ
+	 * from the cached contents.
+	 *
+	 * @param key The key, created with {@link #createKey(String, Collection)}.
+	 * @param outputFiles The output files to restore, in the order they were stored.
+	 * @return The output files which were written, or null if there is no (complete) entry for the key.
+	 * @throws IOException If an output file could not be written.
+	 */
+	public List<File> restore( String key, List<File> outputFiles ) throws IOException {
+		for( int i = 0; i < outputFiles.size(); i++ ) {
+			if( !getEntryFile( key, i ).isFile() ) {
+				misses.incrementAndGet();
+				return null;
+			}
+		}
+
+		List<File> changedFiles = new ArrayList<File>();
+		for( int i = 0; i < outputFiles.size(); i++ ) {
+			File entryFile = getEntryFile( key, i );
+			File outputFile = outputFiles.get( i );
+
+			File tempFile = FileHelper.createTempFile( outputFile );
+			try {
+				Files.copy( entryFile.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			} catch( IOException ex ) {
+				// The entry was evicted by another build while it was being restored. Treat as a miss
+				tempFile.delete();
+				misses.incrementAndGet();
+				return null;
+			}
+			entries.markUsed( entryFile );
+
+			if( FileHelper.moveIfChanged( tempFile, outputFile ) ) {
+				changedFiles.add( outputFile );
+			}
+		}
+
+		hits.incrementAndGet();
+		return changedFiles;
+	}
+
+
+	/**
+	 * Stores the output files of a package's build as the entry for the given key, and then evicts the least
+	 * recently used entries if the cache has grown past its maximum size. An entry that cannot be written is
+	 * simply not cached.
+	 *
+	 * @param key The key, created with {@link #createKey(String, Collection)}.
+	 * @param outputFiles The output files to store, in order.
+	 */
+	public void store( String key, List<File> outputFiles ) {
+		try {
+			for( int i = 0; i < outputFiles.size(); i++ ) {
+				InputStream input = new FileInputStream( outputFiles.get( i ) );
+				try {
+					entries.store( getEntryName( key, i ), input );
+				} finally {
+					input.close();
+				}
+			}
+		} catch( IOException ex ) {
+			return;
+		}
+	}
+
+
+	/**
+	 * Retrieves the number of cache hits since the cache was created.
+	 *
+	 * @return The number of hits.
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+
+	/**
+	 * Retrieves the number of cache misses since the cache was created.
+	 *
+	 * @return The number of misses.
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+
+	/**
+	 * Retrieves the file that stores one of the output files of the entry for the given key.
+	 *
+	 * @param key
+	 * @param index The index of the output file.
+	 * @return The entry file.
+	 */
+	private File getEntryFile( String key, int index ) {
+		return entries.getEntryFile( getEntryName( key, index ) );
+	}
+
+
+	/**
+	 * Retrieves the name of the file that stores one of the output files of the entry for the given key.
+	 *
+	 * @param key
+	 * @param index The index of the output file.
+	 * @return The name of the entry file, without the extension.
+	 */
+	private static String getEntryName( String key, int index ) {
+		return key + "." + index;
+	}
+
+}
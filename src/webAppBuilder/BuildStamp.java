@@ -0,0 +1,178 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+import java.security.MessageDigest;
+
+/**
+ * A make-style record of what a package's output files were built from: the modification time and size of
+ * each of the package's files, of the other files that were found to be part of its output while it was built
+ * (its dependencies, such as the assets which are inlined into a stylesheet), and of its output files, and a hash
+ * of everything else that the output depends on (such as the package's definition, the license header, the
+ * compressor, and the build options).
+ *
+ * The stamp is written to a small file next to the package's output files once they are written. On the next
+ * build, if the stamp of the package's files (which only needs their directory entries) is the same as the one
+ * in the stamp file, the output files are up to date, and the package does not need to be built again. The
+ * dependencies are read from the stamp file, as they are only known once the package's files have been read.
+ */
+public class BuildStamp {
+
+	private static final String HEADER = "WebAppBuilder build stamp 1";  // change when the format of the stamp changes
+
+	private String configHash;
+	private Collection<File> inputFiles;
+	private List<String> inputLines;
+
+
+	/**
+	 * Creates a BuildStamp, recording the current modification time and size of the input files.
+	 *
+	 * @param configHash The hash of everything other than the input files that the output depends on. See {@link #hash}.
+	 * @param inputFiles The input files, in order.
+	 */
+	public BuildStamp( String configHash, Collection<File> inputFiles ) {
+		this.configHash = configHash;
+		this.inputFiles = inputFiles;
+		this.inputLines = createInputLines( inputFiles );
+	}
+
+
+	/**
+	 * Hashes the given strings, for the config hash of a stamp. Null strings are hashed as the string "null".
+	 *
+	 * @param parts The strings to hash, in order.
+	 * @return The hash, as a hex string.
+	 */
+	public static String hash( String... parts ) {
+		MessageDigest digest = FileHelper.createDigest();
+		try {
+			for( String part : parts ) {
+				digest.update( String.valueOf( part ).getBytes( "UTF-8" ) );
+				digest.update( (byte) 0 );
+			}
+		} catch( UnsupportedEncodingException ex ) {
+			throw new RuntimeException( ex );  // UTF-8 is always supported
+		}
+		return FileHelper.toHex( digest.digest() );
+	}
+
+
+	/**
+	 * Determines if the output files are up to date: if the stamp file exists, and holds the same stamp as
+	 * this one with the dependencies that it lists and the output files as they are now. None of the input,
+	 * dependency or output files are opened.
+	 *
+	 * @param stampFile The stamp file.
+	 * @param outputFiles The output files that the build writes.
+	 * @return True if the output files are up to date.
+	 */
+	public boolean isUpToDate( File stampFile, Collection<File> outputFiles ) {
+		if( !stampFile.isFile() ) {
+			return false;
+		}
+
+		try {
+			String stamp = FileHelper.getContents( stampFile );
+			return stamp.equals( toString( readDependencies( stamp ), outputFiles ) );
+		} catch( IOException ex ) {
+			return false;  // an unreadable stamp is treated as out of date
+		}
+	}
+
+
+	/**
+	 * Determines if any of the input files have been modified (or deleted) since the stamp was created, i.e.
+	 * while the package was being built, in which case its output may not match the stamp's inputs.
+	 *
+	 * @return True if an input file has changed.
+	 */
+	public boolean inputsChanged() {
+		return !inputLines.equals( createInputLines( inputFiles ) );
+	}
+
+
+	/**
+	 * Writes the stamp file, once the output files have been written.
+	 *
+	 * @param stampFile The stamp file.
+	 * @param dependencies The files other than the input files that the output was built from.
+	 * @param outputFiles The output files that the build wrote.
+	 * @throws IOException If the stamp file could not be written.
+	 */
+	public void write( File stampFile, Collection<File> dependencies, Collection<File> outputFiles ) throws IOException {
+		FileHelper.setContentsIfChanged( stampFile, toString( dependencies, outputFiles ) );  // default encoding, as getContents() reads it
+	}
+
+
+	/**
+	 * Creates the contents of the stamp file: the header, the config hash, and a line for each input, dependency
+	 * and output file.
+	 *
+	 * @param dependencies The dependencies.
+	 * @param outputFiles The output files.
+	 * @return The contents of the stamp file.
+	 */
+	private String toString( Collection<File> dependencies, Collection<File> outputFiles ) {
+		String lineSeparator = System.getProperty( "line.separator" );
+		StringBuilder stamp = new StringBuilder();
+		stamp.append( HEADER ).append( lineSeparator );
+		stamp.append( "config\t" ).append( configHash ).append( lineSeparator );
+		for( String line : inputLines ) {
+			stamp.append( line ).append( lineSeparator );
+		}
+		for( File file : dependencies ) {
+			stamp.append( createLine( "dep", file ) ).append( lineSeparator );
+		}
+		for( File file : outputFiles ) {
+			stamp.append( createLine( "out", file ) ).append( lineSeparator );
+		}
+		return stamp.toString();
+	}
+
+
+	/**
+	 * Reads the dependencies that a stamp file lists.
+	 *
+	 * @param stamp The contents of the stamp file.
+	 * @return The dependencies, in order.
+	 */
+	private static List<File> readDependencies( String stamp ) {
+		List<File> dependencies = new ArrayList<File>();
+		for( String line : stamp.split( "\\r?\\n" ) ) {
+			String[] fields = line.split( "\t", 4 );
+			if( fields.length == 4 && fields[ 0 ].equals( "dep" ) ) {
+				dependencies.add( new File( fields[ 3 ] ) );
+			}
+		}
+		return dependencies;
+	}
+
+
+	/**
+	 * Creates the lines of the stamp for the input files.
+	 *
+	 * @param inputFiles The input files, in order.
+	 * @return The lines, without line separators.
+	 */
+	private static List<String> createInputLines( Collection<File> inputFiles ) {
+		List<String> lines = new ArrayList<String>();
+		for( File file : inputFiles ) {
+			lines.add( createLine( "in", file ) );
+		}
+		return lines;
+	}
+
+
+	/**
+	 * Creates the line of the stamp for a file. A file which does not exist has a modification time and size of 0.
+	 *
+	 * @param type "in" for an input file, "dep" for a dependency, or "out" for an output file.
+	 * @param file The file.
+	 * @return The line, without a line separator.
+	 */
+	private static String createLine( String type, File file ) {
+		return type + "\t" + file.lastModified() + "\t" + file.length() + "\t" + file.getAbsolutePath();
+	}
+
+}
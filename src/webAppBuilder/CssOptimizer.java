@@ -0,0 +1,320 @@
+package webAppBuilder;
+
+import java.util.*;
+
+/**
+ * A structural optimization pass over a minified stylesheet, which removes the redundancy that the CssCompressor
+ * leaves in when many stylesheets are combined. The stylesheet is parsed into a list of rules (style rules, at-rule
+ * blocks, at-rule statements and comments), and then, only where the result is the same to the browser:
+ *
+ * - Adjacent @media (or @supports) blocks with the same conditions are merged, and the rules inside of each block
+ *   are optimized as a stylesheet of their own.
+ * - Of the style rules which are exactly the same (the same selectors and declarations), only the last is kept.
+ *   This is always safe: the last copy applies the same declarations, with the same specificity, and later in the
+ *   cascade, than the ones that are removed.
+ * - Adjacent style rules with the same selectors are merged into one rule with the declarations of both, in order.
+ * - Adjacent style rules with the same declarations are merged into one rule with the selectors of both, if both
+ *   are made only of type, universal, class, id, and attribute selectors and combinators. A browser drops a whole
+ *   rule if it doesn't support any one of its selectors, so rules with pseudo-classes or pseudo-elements are
+ *   never merged this way.
+ *
+ * Rules are only merged when they are adjacent, so that no rule is moved past another one that it could conflict
+ * with. Comments (such as preserved license comments, or the IE5/Mac comment hack) are never moved, and rules are
+ * never merged across them. Anything which can't be parsed is left as it is.
+ */
+public class CssOptimizer {
+
+	private int removedRules = 0;
+	private int mergedRules = 0;
+
+
+	/**
+	 * Creates a CssOptimizer.
+	 */
+	public CssOptimizer() {}
+
+
+	/**
+	 * Optimizes a minified stylesheet.
+	 *
+	 * @param css The stylesheet, as the CssCompressor output it.
+	 * @return The optimized stylesheet.
+	 */
+	public String optimize( String css ) {
+		return toString( optimize( parse( css ) ) );
+	}
+
+
+	/**
+	 * Retrieves the number of duplicate rules which have been removed by this optimizer.
+	 *
+	 * @return The number of rules.
+	 */
+	public int getRemovedRules() {
+		return removedRules;
+	}
+
+
+	/**
+	 * Retrieves the number of rules which have been merged into the rule before them by this optimizer.
+	 *
+	 * @return The number of rules.
+	 */
+	public int getMergedRules() {
+		return mergedRules;
+	}
+
+
+	/**
+	 * Optimizes a list of rules.
+	 *
+	 * @param rules The rules.
+	 * @return The optimized rules.
+	 */
+	private List<Rule> optimize( List<Rule> rules ) {
+		// Merge adjacent conditional blocks with the same conditions, and optimize the rules inside of them
+		List<Rule> blocks = new ArrayList<Rule>();
+		for( Rule rule : rules ) {
+			Rule last = blocks.isEmpty() ? null : blocks.get( blocks.size() - 1 );
+			if( rule.isConditionalBlock() && last != null && last.isConditionalBlock() && last.selector.equals( rule.selector ) ) {
+				last.body += rule.body;
+				mergedRules++;
+			} else {
+				blocks.add( rule );
+			}
+		}
+		for( Rule rule : blocks ) {
+			if( rule.isConditionalBlock() ) {
+				rule.body = toString( optimize( parse( rule.body ) ) );
+			}
+		}
+
+		// Remove all but the last of each set of identical style rules
+		Set<String> laterRules = new HashSet<String>();
+		LinkedList<Rule> uniqueRules = new LinkedList<Rule>();
+		for( ListIterator<Rule> it = blocks.listIterator( blocks.size() ); it.hasPrevious(); ) {
+			Rule rule = it.previous();
+			if( rule.isStyleRule() && !laterRules.add( rule.toString() ) ) {
+				removedRules++;
+			} else {
+				uniqueRules.addFirst( rule );
+			}
+		}
+
+		// Merge adjacent style rules with the same selectors, or the same declarations
+		List<Rule> mergedRules = new ArrayList<Rule>();
+		for( Rule rule : uniqueRules ) {
+			Rule last = mergedRules.isEmpty() ? null : mergedRules.get( mergedRules.size() - 1 );
+			if( rule.isStyleRule() && last != null && last.isStyleRule() ) {
+				if( last.selector.equals( rule.selector ) ) {
+					last.body = joinDeclarations( last.body, rule.body );
+					this.mergedRules++;
+					continue;
+				}
+				if( last.body.equals( rule.body ) && isPlainSelector( last.selector ) && isPlainSelector( rule.selector ) ) {
+					last.selector += "," + rule.selector;
+					this.mergedRules++;
+					continue;
+				}
+			}
+			mergedRules.add( rule );
+		}
+		return mergedRules;
+	}
+
+
+	/**
+	 * Parses a stylesheet (or the body of a conditional block) into its top-level rules.
+	 *
+	 * @param css The stylesheet.
+	 * @return The rules, in order.
+	 */
+	private static List<Rule> parse( String css ) {
+		List<Rule> rules = new ArrayList<Rule>();
+		int i = 0;
+		int len = css.length();
+
+		while( i < len ) {
+			if( Character.isWhitespace( css.charAt( i ) ) ) {
+				i++;  // whitespace between rules is not needed
+				continue;
+			}
+			if( css.startsWith( "/*", i ) ) {
+				int end = css.indexOf( "*/", i + 2 );
+				end = ( end == -1 ) ? len : end + 2;
+				rules.add( new Rule( null, css.substring( i, end ) ) );
+				i = end;
+				continue;
+			}
+
+			// Find the end of the rule's prelude: the ';' which ends a statement, or the '{' which starts a block
+			int end = skipTo( css, i, ";{" );
+			if( end == len || css.charAt( end ) == ';' ) {
+				end = Math.min( end + 1, len );
+				rules.add( new Rule( null, css.substring( i, end ) ) );
+				i = end;
+				continue;
+			}
+
+			int bodyStart = end + 1;
+			int bodyEnd = findBlockEnd( css, bodyStart );
+			if( bodyEnd == -1 ) {
+				rules.add( new Rule( null, css.substring( i ) ) );  // unterminated. Leave the rest as it is
+				break;
+			}
+			rules.add( new Rule( css.substring( i, end ), css.substring( bodyStart, bodyEnd ) ) );
+			i = bodyEnd + 1;
+		}
+		return rules;
+	}
+
+
+	/**
+	 * Finds the next of the given characters, outside of strings and comments.
+	 *
+	 * @param css The stylesheet.
+	 * @param start The index to start at.
+	 * @param chars The characters to find.
+	 * @return The index of the character, or the length of the stylesheet if there is none.
+	 */
+	private static int skipTo( String css, int start, String chars ) {
+		for( int i = start, len = css.length(); i < len; i++ ) {
+			char c = css.charAt( i );
+			if( chars.indexOf( c ) != -1 ) {
+				return i;
+			}
+			i = skipStringOrComment( css, i );
+		}
+		return css.length();
+	}
+
+
+	/**
+	 * Finds the '}' which ends a block, outside of strings and comments, and of the blocks nested inside of it.
+	 *
+	 * @param css The stylesheet.
+	 * @param start The index just after the block's '{'.
+	 * @return The index of the '}', or -1 if the block is not terminated.
+	 */
+	private static int findBlockEnd( String css, int start ) {
+		int depth = 0;
+		for( int i = start, len = css.length(); i < len; i++ ) {
+			char c = css.charAt( i );
+			if( c == '{' ) {
+				depth++;
+			} else if( c == '}' ) {
+				if( depth == 0 ) {
+					return i;
+				}
+				depth--;
+			} else {
+				i = skipStringOrComment( css, i );
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Skips over the string or comment which starts at an index, if any.
+	 *
+	 * @param css The stylesheet.
+	 * @param i The index.
+	 * @return The index of the last character of the string or comment, or the given index if there is none there.
+	 */
+	private static int skipStringOrComment( String css, int i ) {
+		int len = css.length();
+		char c = css.charAt( i );
+		if( c == '"' || c == '\'' ) {
+			for( i++; i < len && css.charAt( i ) != c; i++ ) {
+				if( css.charAt( i ) == '\\' ) {
+					i++;  // skip the escaped character
+				}
+			}
+		} else if( c == '/' && i + 1 < len && css.charAt( i + 1 ) == '*' ) {
+			int end = css.indexOf( "*/", i + 2 );
+			i = ( end == -1 ) ? len : end + 1;
+		}
+		return i;
+	}
+
+
+	/**
+	 * Joins the declarations of two rules with the same selectors.
+	 *
+	 * @param first The declarations of the first rule.
+	 * @param second The declarations of the second rule.
+	 * @return The declarations of both rules, in order.
+	 */
+	private static String joinDeclarations( String first, String second ) {
+		if( first.isEmpty() || first.endsWith( ";" ) ) {
+			return first + second;
+		}
+		return first + ";" + second;
+	}
+
+
+	/**
+	 * Determines if a selector is made only of type, universal, class, id, and attribute selectors and combinators,
+	 * which every browser supports, so that merging it into another rule cannot cause the rule to be dropped.
+	 *
+	 * @param selector
+	 * @return True if the selector has no pseudo-classes, pseudo-elements, escapes, or non-standard combinators
+	 *   (outside of its attribute selectors).
+	 */
+	private static boolean isPlainSelector( String selector ) {
+		for( int i = 0, len = selector.length(); i < len; i++ ) {
+			char c = selector.charAt( i );
+			if( c == '[' ) {
+				i = skipTo( selector, i + 1, "]" );  // an attribute value may contain anything, in quotes
+			} else if( c == ':' || c == '\\' || c == '/' ) {  // a pseudo-class or pseudo-element, an escape, or a /deep/ style combinator
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Serializes a list of rules.
+	 *
+	 * @param rules The rules.
+	 * @return The stylesheet.
+	 */
+	private static String toString( List<Rule> rules ) {
+		StringBuilder css = new StringBuilder();
+		for( Rule rule : rules ) {
+			css.append( rule );
+		}
+		return css.toString();
+	}
+
+
+	/**
+	 * A top-level rule of a stylesheet: a block (a style rule, or an at-rule with a block), or a statement (an
+	 * at-rule without a block) or comment, which is kept as it is.
+	 */
+	private static class Rule {
+		public String selector;  // the selector of a style rule, or the prelude of an at-rule block. Null for a statement or comment
+		public String body;      // the contents of a block, or the whole statement or comment
+
+		public Rule( String selector, String body ) {
+			this.selector = selector;
+			this.body = body;
+		}
+
+		public boolean isStyleRule() {
+			return selector != null && !selector.startsWith( "@" );
+		}
+
+		public boolean isConditionalBlock() {
+			return selector != null && ( selector.startsWith( "@media" ) || selector.startsWith( "@supports" ) );
+		}
+
+		@Override
+		public String toString() {
+			return ( selector != null ) ? selector + "{" + body + "}" : body;
+		}
+	}
+
+}
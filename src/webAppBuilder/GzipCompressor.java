@@ -0,0 +1,191 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Creates the gzip compressed form of an output file, to be served as a precompressed sidecar
+ * (i.e. with nginx's gzip_static).
+ *
+ * Large inputs are compressed in parallel, in the same way as pigz: the input is split into blocks,
+ * and each block is compressed at the maximum level on its own thread, using the 32K of input before
+ * it as a preset dictionary, so that little compression is lost at block boundaries. Each block but the
+ * last ends with a sync flush (so that it ends on a byte boundary), and the compressed blocks are then
+ * concatenated into a single deflate stream in a gzip wrapper.
+ *
+ * The output is deterministic (the gzip header has no timestamp or file name), so an unchanged input always
+ * produces an unchanged .gz file.
+ */
+public class GzipCompressor {
+
+	private static final int BLOCK_SIZE = 128 * 1024;
+	private static final int DICTIONARY_SIZE = 32 * 1024;  // the deflate window size
+
+	private boolean exhaustive;
+
+
+	/**
+	 * Creates a GzipCompressor.
+	 *
+	 * @param exhaustive True to compress each block with each of the Deflater's strategies, and keep the smallest
+	 *   result. This is slower, but may produce a slightly smaller output.
+	 */
+	public GzipCompressor( boolean exhaustive ) {
+		this.exhaustive = exhaustive;
+	}
+
+
+	/**
+	 * Compresses the given data into the gzip format.
+	 *
+	 * @param data The data to compress.
+	 * @return The gzip compressed data.
+	 * @throws IOException If the data could not be compressed.
+	 */
+	public byte[] compress( final byte[] data ) throws IOException {
+		int numBlocks = Math.max( 1, ( data.length + BLOCK_SIZE - 1 ) / BLOCK_SIZE );
+		List<byte[]> blocks = new ArrayList<byte[]>();
+
+		if( numBlocks == 1 ) {
+			blocks.add( compressBlock( data, 0, data.length, true ) );
+
+		} else {
+			int threads = Math.min( numBlocks, Runtime.getRuntime().availableProcessors() );
+			ExecutorService executor = ThreadHelper.newFixedThreadPool( threads, "gzip" );
+			try {
+				List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+				for( int i = 0; i < numBlocks; i++ ) {
+					final int offset = i * BLOCK_SIZE;
+					final int length = Math.min( BLOCK_SIZE, data.length - offset );
+					final boolean last = ( i == numBlocks - 1 );
+
+					futures.add( executor.submit( new Callable<byte[]>() {
+						@Override
+						public byte[] call() {
+							return compressBlock( data, offset, length, last );
+						}
+					} ) );
+				}
+
+				for( Future<byte[]> future : futures ) {
+					blocks.add( ThreadHelper.getResult( future ) );
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update( data, 0, data.length );
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream( data.length / 3 + 64 );
+		output.write( new byte[] {
+			(byte) 0x1f, (byte) 0x8b,  // magic number
+			Deflater.DEFLATED,         // compression method
+			0,                         // flags: none
+			0, 0, 0, 0,                // modification time: none, so that the output is deterministic
+			2,                         // extra flags: maximum compression
+			(byte) 255                 // operating system: unknown
+		} );
+		for( byte[] block : blocks ) {
+			output.write( block );
+		}
+		writeIntLE( output, (int) crc.getValue() );
+		writeIntLE( output, data.length );  // the size of the input, modulo 2^32
+
+		return output.toByteArray();
+	}
+
+
+	/**
+	 * Compresses a single block of the input into raw deflate data.
+	 *
+	 * @param data The entire input.
+	 * @param offset The offset of the block in the input.
+	 * @param length The length of the block.
+	 * @param last True if this is the last block, which finishes the deflate stream. Otherwise, the block ends
+	 *   with a sync flush.
+	 * @return The compressed block.
+	 */
+	private byte[] compressBlock( byte[] data, int offset, int length, boolean last ) {
+		int[] strategies = exhaustive ? new int[] { Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY } : new int[] { Deflater.DEFAULT_STRATEGY };
+
+		byte[] smallest = null;
+		for( int strategy : strategies ) {
+			byte[] compressed = deflate( data, offset, length, last, strategy );
+			if( smallest == null || compressed.length < smallest.length ) {
+				smallest = compressed;
+			}
+		}
+		return smallest;
+	}
+
+
+	/**
+	 * Deflates a single block of the input with the given strategy.
+	 *
+	 * @param data The entire input.
+	 * @param offset The offset of the block in the input.
+	 * @param length The length of the block.
+	 * @param last True if this is the last block.
+	 * @param strategy The Deflater strategy.
+	 * @return The compressed block.
+	 */
+	private static byte[] deflate( byte[] data, int offset, int length, boolean last, int strategy ) {
+		Deflater deflater = new Deflater( Deflater.BEST_COMPRESSION, /* nowrap */ true );
+		ByteArrayOutputStream output = new ByteArrayOutputStream( length / 3 + 64 );
+		byte[] buffer = new byte[ 16384 ];
+
+		try {
+			deflater.setStrategy( strategy );
+
+			// Prime the window with the end of the previous block, so that matches can reach back into it
+			if( offset > 0 ) {
+				int dictionaryLength = Math.min( DICTIONARY_SIZE, offset );
+				deflater.setDictionary( data, offset - dictionaryLength, dictionaryLength );
+			}
+			deflater.setInput( data, offset, length );
+
+			if( last ) {
+				deflater.finish();
+				while( !deflater.finished() ) {
+					int count = deflater.deflate( buffer );
+					output.write( buffer, 0, count );
+				}
+
+			} else {
+				while( !deflater.needsInput() ) {
+					int count = deflater.deflate( buffer, 0, buffer.length, Deflater.NO_FLUSH );
+					output.write( buffer, 0, count );
+				}
+
+				int count;
+				do {
+					count = deflater.deflate( buffer, 0, buffer.length, Deflater.SYNC_FLUSH );
+					output.write( buffer, 0, count );
+				} while( count == buffer.length );
+			}
+
+		} finally {
+			deflater.end();
+		}
+		return output.toByteArray();
+	}
+
+
+	/**
+	 * Writes a 32 bit integer in little endian byte order, as the gzip format requires.
+	 *
+	 * @param output
+	 * @param value
+	 */
+	private static void writeIntLE( OutputStream output, int value ) throws IOException {
+		output.write( value & 0xff );
+		output.write( ( value >>> 8 ) & 0xff );
+		output.write( ( value >>> 16 ) & 0xff );
+		output.write( ( value >>> 24 ) & 0xff );
+	}
+
+}
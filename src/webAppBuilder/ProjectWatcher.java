@@ -0,0 +1,303 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import webAppBuilder.include.Include;
+import webAppBuilder.pkg.Package;
+
+/**
+ * Watches the files of a {@link Project} for changes after it has been built, and rebuilds the packages
+ * that are affected by the changes.
+ *
+ * The directories behind each of the project's {@link Include Include Directives}, the directories of the files
+ * that the packages' output is built from along with their own files (their {@link Package#getDependencies()
+ * dependencies}, such as @imported stylesheets and inlined assets), and the directory of the build.json file
+ * itself are registered with a {@link WatchService}. When a burst of changes has settled, the set of files that
+ * each package resolves to (and its dependencies) is compared (by path, last modified time, and size) with the
+ * set from the package's last build, and only the packages whose files have changed are rebuilt.
+ * A change to the build.json file re-loads the project, and rebuilds the packages whose definitions changed.
+ */
+public class ProjectWatcher {
+
+	/**
+	 * The amount of time, in milliseconds, to wait for more changes after a change is seen before
+	 * rebuilding. Editors often write a file in several steps, and saving many files at once should
+	 * only cause one rebuild.
+	 */
+	private static final long DEBOUNCE_MS = 250;
+
+	private File projectFile;
+	private BuildOptions buildOptions;
+	private Project project;
+
+	private WatchService watchService;
+	private Map<Path, WatchKey> watchKeys = new HashMap<Path, WatchKey>();
+
+	// The files (and their last modified times and sizes) that each package was last built from
+	private Map<Package, Map<File, String>> snapshots = new HashMap<Package, Map<File, String>>();
+
+
+	/**
+	 * Creates a ProjectWatcher for a project which has already been built.
+	 *
+	 * @param projectFile The build.json file that the project was loaded from.
+	 * @param buildOptions The options that the project was built with.
+	 * @param project The project.
+	 */
+	public ProjectWatcher( File projectFile, BuildOptions buildOptions, Project project ) {
+		this.projectFile = FileHelper.normalize( projectFile );
+		this.buildOptions = buildOptions;
+		this.project = project;
+	}
+
+
+	/**
+	 * Watches the project's files, and rebuilds its packages as they change. This method does not return
+	 * unless the thread is interrupted. Errors in a rebuild are reported, and then watching continues.
+	 *
+	 * @throws IOException If the WatchService could not be created.
+	 */
+	public void watch() throws IOException {
+		watchService = FileSystems.getDefault().newWatchService();
+		try {
+			for( Package pkg : project.getPackages() ) {
+				snapshots.put( pkg, createSnapshot( pkg ) );
+			}
+			registerDirectories();
+
+			System.out.println( "Watching for changes... (press Ctrl+C to stop)" );
+			while( true ) {
+				boolean projectFileChanged = awaitChanges();
+
+				if( projectFileChanged ) {
+					reloadProject();
+				}
+				rebuildChangedPackages();
+				registerDirectories();
+			}
+
+		} catch( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+
+		} finally {
+			watchService.close();
+		}
+	}
+
+
+	/**
+	 * Waits for a change in any of the watched directories, and then keeps collecting changes until
+	 * none have been seen for {@link #DEBOUNCE_MS}.
+	 *
+	 * @return True if the build.json file was one of the files that changed.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	private boolean awaitChanges() throws InterruptedException {
+		boolean projectFileChanged = false;
+
+		WatchKey key = watchService.take();
+		while( key != null ) {
+			Path dir = (Path) key.watchable();
+
+			for( WatchEvent<?> event : key.pollEvents() ) {
+				if( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+					continue;  // the package snapshots are all compared anyway
+				}
+
+				File changedFile = dir.resolve( (Path) event.context() ).toFile();
+				if( changedFile.equals( projectFile ) ) {
+					projectFileChanged = true;
+				}
+			}
+			if( !key.reset() ) {
+				watchKeys.remove( dir );  // the directory no longer exists
+			}
+
+			key = watchService.poll( DEBOUNCE_MS, TimeUnit.MILLISECONDS );
+		}
+
+		return projectFileChanged;
+	}
+
+
+	/**
+	 * Re-loads the project from the build.json file. Packages whose definitions (and the license header)
+	 * are unchanged keep their snapshots, so that they are only rebuilt if their files have changed. If the
+	 * build.json file cannot be loaded, the error is reported and the previous project is kept.
+	 */
+	private void reloadProject() {
+		System.out.println( "Project file changed: " + projectFile.getPath() );
+
+		Project newProject;
+		try {
+			newProject = Project.fromFile( projectFile, buildOptions );
+
+		} catch( Exception ex ) {
+			System.err.println( "Could not load the project file: " + ex.getMessage() );
+			return;
+		}
+
+		Map<String, Package> oldPkgs = new HashMap<String, Package>();
+		for( Package pkg : project.getPackages() ) {
+			oldPkgs.put( pkg.getName(), pkg );
+		}
+		boolean licenseChanged = !newProject.getLicenseHeader().equals( project.getLicenseHeader() );
+
+		Map<Package, Map<File, String>> newSnapshots = new HashMap<Package, Map<File, String>>();
+		for( Package pkg : newProject.getPackages() ) {
+			Package oldPkg = oldPkgs.get( pkg.getName() );
+
+			if( !licenseChanged && oldPkg != null && pkg.getDefinition().equals( oldPkg.getDefinition() ) ) {
+				newSnapshots.put( pkg, snapshots.get( oldPkg ) );
+			}
+		}
+
+		project = newProject;
+		snapshots = newSnapshots;
+	}
+
+
+	/**
+	 * Rebuilds each package whose set of files, or whose files' contents, have changed since it was last
+	 * built (or which has never been built).
+	 */
+	private void rebuildChangedPackages() {
+		List<Package> changedPkgs = new ArrayList<Package>();
+		Map<Package, Map<File, String>> newSnapshots = new HashMap<Package, Map<File, String>>();
+
+		project.getFileIndex().removeStale();  // files may have been added or removed
+
+		for( Package pkg : project.getPackages() ) {
+			try {
+				Map<File, String> snapshot = createSnapshot( pkg );
+				if( !snapshot.equals( snapshots.get( pkg ) ) ) {
+					changedPkgs.add( pkg );
+					newSnapshots.put( pkg, snapshot );
+				}
+
+			} catch( BuildFileException ex ) {
+				System.err.println( ex.getMessage() );
+				snapshots.remove( pkg );  // so that the package is rebuilt once the problem is fixed
+			}
+		}
+
+		if( changedPkgs.isEmpty() ) {
+			return;
+		}
+
+		for( Package pkg : changedPkgs ) {
+			pkg.reset();
+		}
+		try {
+			project.writeOutput( changedPkgs );
+
+			// The build may have found new dependencies (i.e. a stylesheet now @imports another file)
+			for( Package pkg : changedPkgs ) {
+				addDependencies( pkg, newSnapshots.get( pkg ) );
+			}
+			snapshots.putAll( newSnapshots );
+
+		} catch( Exception ex ) {
+			System.err.println( "Build failed: " + ex );
+		}
+		System.out.println( "Watching for changes... (press Ctrl+C to stop)" );
+	}
+
+
+	/**
+	 * Creates a snapshot of the files that a package resolves to, and of its dependencies as of its last build: a
+	 * map of each file to its last modified time and size. The output files of the project's packages are never resolved as a package's files
+	 * (see {@link Package#setExcludedFiles}), so writing a package's output (which may be in a watched
+	 * directory) never causes another rebuild.
+	 *
+	 * @param pkg The package to create the snapshot for.
+	 * @return The snapshot.
+	 * @throws BuildFileException If a file or directory referred to by one of the package's includes does not
+	 *   exist, or the package's dependencies could not be found.
+	 */
+	private Map<File, String> createSnapshot( Package pkg ) {
+		Map<File, String> snapshot = new LinkedHashMap<File, String>();
+		for( File file : pkg.getFiles() ) {
+			snapshot.put( file, file.lastModified() + ":" + file.length() );
+		}
+		addDependencies( pkg, snapshot );
+		return snapshot;
+	}
+
+
+	/**
+	 * Adds the dependencies of a package which are not in its snapshot yet to the snapshot.
+	 *
+	 * @param pkg The package.
+	 * @param snapshot The package's snapshot. Updated.
+	 * @throws BuildFileException If the package's dependencies could not be found.
+	 */
+	private void addDependencies( Package pkg, Map<File, String> snapshot ) {
+		try {
+			for( File file : pkg.getDependencies() ) {
+				if( !snapshot.containsKey( file ) ) {
+					snapshot.put( file, file.lastModified() + ":" + file.length() );
+				}
+			}
+		} catch( IOException ex ) {
+			throw new BuildFileException( "The files that the package '" + pkg.getName() + "' depends on could not be found: " + ex.getMessage(), ex );
+		}
+	}
+
+
+	/**
+	 * Registers the directory of the build.json file, the directories behind each of the project's include
+	 * directives, and the directories of the packages' dependencies with the WatchService. Directories that are no longer needed (for instance,
+	 * because an include was removed from the build.json file) are unregistered.
+	 */
+	private void registerDirectories() {
+		Set<Path> dirs = new HashSet<Path>();
+		dirs.add( projectFile.getParentFile().toPath() );
+
+		for( Package pkg : project.getPackages() ) {
+			for( Include include : pkg.getIncludes() ) {
+				try {
+					for( File dir : include.getDirectories() ) {
+						dirs.add( FileHelper.normalize( dir ).toPath() );
+					}
+				} catch( BuildFileException ex ) {
+					// The directory does not exist (yet). Its parent directory is watched by the
+					// build.json or another include, or the error is reported on the next rebuild
+				}
+			}
+
+			Map<File, String> snapshot = snapshots.get( pkg );  // has the package's dependencies as of its last build
+			if( snapshot != null ) {
+				for( File file : snapshot.keySet() ) {
+					File dir = FileHelper.normalize( file ).getParentFile();
+					if( dir.isDirectory() ) {
+						dirs.add( dir.toPath() );
+					}
+				}
+			}
+		}
+
+		for( Iterator<Map.Entry<Path, WatchKey>> it = watchKeys.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Path, WatchKey> entry = it.next();
+			if( !dirs.contains( entry.getKey() ) ) {
+				entry.getValue().cancel();
+				it.remove();
+			}
+		}
+
+		for( Path dir : dirs ) {
+			if( !watchKeys.containsKey( dir ) ) {
+				try {
+					watchKeys.put( dir, dir.register( watchService,
+						StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY ) );
+
+				} catch( IOException ex ) {
+					System.err.println( "Could not watch the directory '" + dir + "': " + ex.getMessage() );
+				}
+			}
+		}
+	}
+
+}
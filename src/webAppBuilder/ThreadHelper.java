@@ -0,0 +1,76 @@
+package webAppBuilder;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Encapsulates the thread pool operations that the WebAppBuilder application uses to build
+ * packages and files in parallel.
+ */
+public class ThreadHelper {
+
+	/**
+	 * Creates a fixed size pool of daemon worker threads, so that a pool which is not shut down
+	 * never keeps the application alive.
+	 *
+	 * @param threads The number of threads in the pool.
+	 * @param name The name prefix for the pool's threads.
+	 * @return The ExecutorService.
+	 */
+	public static ExecutorService newFixedThreadPool( int threads, final String name ) {
+		return Executors.newFixedThreadPool( threads, new ThreadFactory() {
+			private int count = 0;
+
+			@Override
+			public synchronized Thread newThread( Runnable runnable ) {
+				Thread thread = new Thread( runnable, name + "-" + ( ++count ) );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+	}
+
+
+	/**
+	 * Waits for the given Future to complete, and returns its result. If the task threw an exception,
+	 * that exception is re-thrown as-is (rather than wrapped in an ExecutionException), so that callers
+	 * see the same exception that they would have seen had the task been run on the calling thread.
+	 *
+	 * @param future The Future to wait for.
+	 * @return The result of the task.
+	 * @throws IOException If the task threw an IOException, or the wait was interrupted.
+	 */
+	public static <T> T getResult( Future<T> future ) throws IOException {
+		try {
+			return future.get();
+
+		} catch( ExecutionException ex ) {
+			rethrow( ex.getCause() );
+			return null;  // never reached
+
+		} catch( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Interrupted while waiting for a build task to complete" );
+		}
+	}
+
+
+	/**
+	 * Re-throws an exception that was thrown by a task on a worker thread.
+	 *
+	 * @param cause The exception to re-throw.
+	 * @throws IOException If the cause is an IOException.
+	 */
+	public static void rethrow( Throwable cause ) throws IOException {
+		if( cause instanceof IOException ) {
+			throw (IOException) cause;
+		} else if( cause instanceof RuntimeException ) {
+			throw (RuntimeException) cause;
+		} else if( cause instanceof Error ) {
+			throw (Error) cause;
+		} else {
+			throw new RuntimeException( cause );
+		}
+	}
+
+}
@@ -1,7 +1,9 @@
 package webAppBuilder;
 
+import java.util.*;
 import java.io.*;
 import jargs.gnu.CmdLineParser;
+import webAppBuilder.pkg.Package;
 
 
 public class WebAppBuilder {
@@ -9,12 +11,148 @@ public class WebAppBuilder {
 
 	private static File projectFile;
 	private static BuildOptions buildOptions;
+	private static boolean daemon;
+	private static boolean connect;
+	private static int port;
+	private static File jfrFile;
+	private static String changedFilesList;
+	private static boolean printAffected;
+	private static int exitStatus;
 
 	public static void main( String[] args ) throws Exception {
-		if( parseArgs( args ) == true ) {
-			Project project = Project.fromFile( projectFile, buildOptions );
-			project.writeOutput();
+		File workingDir = new File( System.getProperty( "user.dir" ) );
+
+		if( parseArgs( args, workingDir ) == true ) {
+			if( jfrFile != null && !connect ) {
+				BuildEvents.startRecording( jfrFile );
+			}
+
+			if( daemon ) {
+				new BuildDaemon( port ).serve();
+
+			} else if( connect ) {
+				List<String> requestArgs = new ArrayList<String>( Arrays.asList( args ) );
+				requestArgs.remove( "--connect" );
+				exitStatus = BuildDaemon.sendBuildRequest( port, requestArgs.toArray( new String[ requestArgs.size() ] ), workingDir );
+
+			} else {
+				Project project = Project.fromFile( projectFile, buildOptions );
+				exitStatus = buildProject( project, workingDir );
+
+				if( buildOptions.getWatch() ) {
+					new ProjectWatcher( projectFile, buildOptions, project ).watch();
+				}
+			}
+		}
+
+		if( exitStatus != 0 ) {
+			System.exit( exitStatus );
+		}
+	}
+
+
+	/**
+	 * Runs a build that was sent to a {@link BuildDaemon}, as if the arguments had been given on the command
+	 * line in the given working directory. The build uses the daemon's directory index and file contents cache,
+	 * so that the directories and files which have not changed since the last build are not read again.
+	 *
+	 * @param args The command line arguments of the build.
+	 * @param workingDir The working directory of the client, which relative paths are resolved against.
+	 * @param fileIndex The daemon's directory index.
+	 * @param contentsCache The daemon's file contents cache.
+	 * @return The exit status of the build.
+	 * @throws Exception If the build failed.
+	 */
+	static int runBuildRequest( String[] args, File workingDir, FileIndex fileIndex, FileContentsCache contentsCache ) throws Exception {
+		exitStatus = 0;
+		if( parseArgs( args, workingDir ) == false ) {
+			return exitStatus;
+		}
+		if( daemon || connect || buildOptions.getWatch() || jfrFile != null ) {
+			System.err.println( "The --daemon, --connect, --watch, and --jfr arguments cannot be sent to a build daemon. Start the daemon with --jfr to record its builds." );
+			return 2;
 		}
+		if( "-".equals( changedFilesList ) ) {
+			System.err.println( "A build daemon cannot read the changed files from standard input. Write them to a file, and pass that to --changedFiles." );
+			return 2;
+		}
+
+		Project project = Project.fromFile( projectFile, buildOptions );
+		project.setFileIndex( fileIndex );
+		project.setFileContentsCache( contentsCache );
+		return buildProject( project, workingDir );
+	}
+
+
+	/**
+	 * Builds the packages of a project: all of them, or only those affected by the --changedFiles list. If
+	 * --printAffected is set, the names of the packages are printed instead.
+	 *
+	 * @param project The project.
+	 * @param workingDir The directory that relative paths in the changed files list are resolved against.
+	 * @return The exit status of the build.
+	 * @throws IOException If the changed files list could not be read, or the build failed.
+	 */
+	private static int buildProject( Project project, File workingDir ) throws IOException {
+		List<Package> pkgs = project.getPackages();
+		if( changedFilesList != null ) {
+			pkgs = project.getAffectedPackages( readChangedFiles( changedFilesList, workingDir ), projectFile );
+		}
+
+		if( printAffected ) {
+			for( Package pkg : pkgs ) {
+				System.out.println( pkg.getName() );
+			}
+			return 0;
+		}
+
+		if( pkgs.isEmpty() ) {
+			System.out.println( "No packages are affected by the changed files." );
+			return 0;
+		}
+		project.writeOutput( pkgs );
+		return getProfileStatus( project );
+	}
+
+
+	/**
+	 * Reads the list of changed files given to --changedFiles: one path per line, relative to the working
+	 * directory (as `git diff --name-only` prints them, when run from the top of the repository).
+	 *
+	 * @param changedFilesList The file with the list, or "-" to read the list from standard input.
+	 * @param workingDir The directory that relative paths are resolved against.
+	 * @return The changed files.
+	 * @throws IOException If the list could not be read.
+	 */
+	private static List<File> readChangedFiles( String changedFilesList, File workingDir ) throws IOException {
+		Reader reader = "-".equals( changedFilesList ) ? new InputStreamReader( System.in ) : new FileReader( resolvePath( workingDir, changedFilesList ) );
+		BufferedReader input = new BufferedReader( reader );
+
+		List<File> changedFiles = new ArrayList<File>();
+		try {
+			String line;
+			while( ( line = input.readLine() ) != null ) {
+				if( !line.trim().isEmpty() ) {
+					changedFiles.add( resolvePath( workingDir, line.trim() ) );
+				}
+			}
+		} finally {
+			input.close();
+		}
+		return changedFiles;
+	}
+
+
+	/**
+	 * Determines the exit status of a build from its profile: the build fails if any of its phases
+	 * regressed from the profile baseline.
+	 *
+	 * @param project The project, which has been built.
+	 * @return 1 if the build's profile has regressions, or 0 otherwise.
+	 */
+	private static int getProfileStatus( Project project ) {
+		BuildProfile profile = project.getProfile();
+		return ( profile != null && !profile.getRegressions().isEmpty() ) ? 1 : 0;
 	}
 
 
@@ -44,6 +182,91 @@ public class WebAppBuilder {
 		System.out.println( "    --minifySuffix -s  Suffix to append to JS and CSS 'minified' targets," );
 		System.out.println( "                       defaults to '.min'\n" );
 
+		System.out.println( "    --jobs -j          The number of packages to build at the same time." );
+		System.out.println( "                       Defaults to 1 (one package after another)\n" );
+		System.out.println( "    --minifyThreads    If set, minifies each file of a package on its own, using" );
+		System.out.println( "                       this many threads per package, and then concatenates the" );
+		System.out.println( "                       minified files. Defaults to 0 (minify the package as a" );
+		System.out.println( "                       whole)\n" );
+		System.out.println( "    --cssChunkSize     Split stylesheets larger than this many kilobytes into" );
+		System.out.println( "                       chunks at top-level rules, and compress the chunks in" );
+		System.out.println( "                       parallel. Defaults to 0 (compress each as a whole)\n" );
+		System.out.println( "    --verifyCssChunks  Also compress chunked stylesheets as a whole, and fail" );
+		System.out.println( "                       the build if the results differ\n" );
+		System.out.println( "    --inlineAssetLimit Inline the images and fonts that stylesheets refer to" );
+		System.out.println( "                       which are no larger than this many bytes as data URIs." );
+		System.out.println( "                       Defaults to 0 (inline nothing)\n" );
+		System.out.println( "    --flattenImports   Replace the @imports of local files in stylesheets with" );
+		System.out.println( "                       the files' contents, and move remote @imports to the top\n" );
+		System.out.println( "    --optimizeCss      Remove duplicate rules from minified stylesheets, and merge" );
+		System.out.println( "                       adjacent rules with the same selectors or declarations\n" );
+		System.out.println( "    --workers          Minify in this many worker JVMs, instead of in the build's" );
+		System.out.println( "                       own JVM. A worker which runs out of memory or times out is" );
+		System.out.println( "                       restarted. Also sets the default of --jobs to this number\n" );
+		System.out.println( "    --workerTimeout    The number of seconds that a worker may take to minify one" );
+		System.out.println( "                       package (or file). Defaults to 300\n" );
+		System.out.println( "    --workerHeap       The maximum heap of each worker, in megabytes. Defaults to" );
+		System.out.println( "                       the build's own maximum heap, shared between the workers\n" );
+		System.out.println( "    --cacheDir         A directory to cache minified files in between builds, so" );
+		System.out.println( "                       that files which have not changed are not minified again." );
+		System.out.println( "                       Defaults to no cache\n" );
+		System.out.println( "    --actionCacheDir   A directory to cache the output files of whole packages" );
+		System.out.println( "                       in, keyed by the contents of their files and their" );
+		System.out.println( "                       configuration. May be shared between machines. Defaults" );
+		System.out.println( "                       to no cache\n" );
+		System.out.println( "    --cacheSize        The maximum size of each cache directory, in megabytes." );
+		System.out.println( "                       Defaults to 100\n" );
+
+		System.out.println( "    --force -f         Build every package, even those whose output files are" );
+		System.out.println( "                       up to date with their files and the build options\n" );
+
+		System.out.println( "    --dedupeFiles      Leave out files whose contents are identical to a file" );
+		System.out.println( "                       already included in the same package, with a warning\n" );
+
+		System.out.println( "    --lowMemory        Stream each package's files into its output files, and" );
+		System.out.println( "                       through the compressor, instead of holding them in memory," );
+		System.out.println( "                       and report the peak heap used while each package is" );
+		System.out.println( "                       written. Builds one package at a time, and disables" );
+		System.out.println( "                       --jobs, --cacheDir and --minifyThreads\n" );
+
+		System.out.println( "    --gzip -z          Also write a gzip compressed .gz file next to each" );
+		System.out.println( "                       'minified' target, for serving precompressed\n" );
+		System.out.println( "    --gzipExhaustive   Try each compression strategy for the .gz files, and keep" );
+		System.out.println( "                       the smallest result. Slower, but may be smaller\n" );
+
+		System.out.println( "    --profile          Print the wall time, CPU time, bytes in and out, and file" );
+		System.out.println( "                       counts of each phase of each package's build\n" );
+		System.out.println( "    --profileReport    Also write the profile as a JSON report to this file." );
+		System.out.println( "                       Implies --profile\n" );
+		System.out.println( "    --profileBaseline  Compare the profile with this JSON report from an earlier" );
+		System.out.println( "                       build, and fail the build if a phase has regressed." );
+		System.out.println( "                       Implies --profile\n" );
+		System.out.println( "    --profileThreshold The percentage that a phase may be slower than in the" );
+		System.out.println( "                       baseline before it is a regression. Defaults to 10\n" );
+
+		System.out.println( "    --changedFiles     Only build the packages affected by the files listed in" );
+		System.out.println( "                       this file (one per line), or in standard input if '-'." );
+		System.out.println( "                       Added and deleted files are included\n" );
+		System.out.println( "    --printAffected    Print the names of the packages that would be built, one" );
+		System.out.println( "                       per line, without building them\n" );
+
+		System.out.println( "    --watch -w         Keep running after the build, and rebuild the packages" );
+		System.out.println( "                       whose files change\n" );
+
+		System.out.println( "    --jfr              Record the build with the Java Flight Recorder, to this" );
+		System.out.println( "                       file. The recording includes events for each project" );
+		System.out.println( "                       load, include, file read, minification, and write\n" );
+
+		System.out.println( "    --daemon           Start a build daemon, which keeps running and builds" );
+		System.out.println( "                       projects for clients started with --connect, keeping" );
+		System.out.println( "                       the compressors, directory listings, and file contents" );
+		System.out.println( "                       warm between builds. Only clients run by the same" );
+		System.out.println( "                       user (who can read its token) are served\n" );
+		System.out.println( "    --connect          Send the build to a running build daemon, instead of" );
+		System.out.println( "                       building in this process. All other arguments are sent" );
+		System.out.println( "                       along with it\n" );
+		System.out.println( "    --port             The local port of the build daemon. Defaults to " + BuildDaemon.DEFAULT_PORT + "\n" );
+
 		System.out.println( "    --verbose -v       Output detailed information about what is being built" );
 		System.out.println( "    --help -h          Prints this help display" );
 
@@ -59,9 +282,10 @@ public class WebAppBuilder {
 	 * Parses the arguments provided to the command line, and creates a {@link Config} object out of them.
 	 *
 	 * @param args
+	 * @param workingDir The directory that relative paths are resolved against.
 	 * @return
 	 */
-	private static boolean parseArgs( String[] args ) {
+	private static boolean parseArgs( String[] args, File workingDir ) {
 		CmdLineParser parser = new CmdLineParser();
 		CmdLineParser.Option projectFileOpt = parser.addStringOption( 'p', "projectFile" );
 		CmdLineParser.Option outputDirOpt = parser.addStringOption( 'o', "outputDir" );
@@ -70,6 +294,35 @@ public class WebAppBuilder {
 		CmdLineParser.Option debugSuffixOpt = parser.addBooleanOption( "debugSuffix" );
 		CmdLineParser.Option minifyOnlyOpt = parser.addBooleanOption( 'm', "minifyOnly" );
 		CmdLineParser.Option minifySuffixOpt = parser.addStringOption( 's', "minifySuffix" );
+		CmdLineParser.Option jobsOpt = parser.addIntegerOption( 'j', "jobs" );
+		CmdLineParser.Option minifyThreadsOpt = parser.addIntegerOption( "minifyThreads" );
+		CmdLineParser.Option cssChunkSizeOpt = parser.addIntegerOption( "cssChunkSize" );
+		CmdLineParser.Option verifyCssChunksOpt = parser.addBooleanOption( "verifyCssChunks" );
+		CmdLineParser.Option inlineAssetLimitOpt = parser.addIntegerOption( "inlineAssetLimit" );
+		CmdLineParser.Option flattenImportsOpt = parser.addBooleanOption( "flattenImports" );
+		CmdLineParser.Option optimizeCssOpt = parser.addBooleanOption( "optimizeCss" );
+		CmdLineParser.Option workersOpt = parser.addIntegerOption( "workers" );
+		CmdLineParser.Option workerTimeoutOpt = parser.addIntegerOption( "workerTimeout" );
+		CmdLineParser.Option workerHeapOpt = parser.addIntegerOption( "workerHeap" );
+		CmdLineParser.Option cacheDirOpt = parser.addStringOption( "cacheDir" );
+		CmdLineParser.Option actionCacheDirOpt = parser.addStringOption( "actionCacheDir" );
+		CmdLineParser.Option cacheSizeOpt = parser.addIntegerOption( "cacheSize" );
+		CmdLineParser.Option lowMemoryOpt = parser.addBooleanOption( "lowMemory" );
+		CmdLineParser.Option forceOpt = parser.addBooleanOption( 'f', "force" );
+		CmdLineParser.Option dedupeFilesOpt = parser.addBooleanOption( "dedupeFiles" );
+		CmdLineParser.Option changedFilesOpt = parser.addStringOption( "changedFiles" );
+		CmdLineParser.Option printAffectedOpt = parser.addBooleanOption( "printAffected" );
+		CmdLineParser.Option watchOpt = parser.addBooleanOption( 'w', "watch" );
+		CmdLineParser.Option gzipOpt = parser.addBooleanOption( 'z', "gzip" );
+		CmdLineParser.Option gzipExhaustiveOpt = parser.addBooleanOption( "gzipExhaustive" );
+		CmdLineParser.Option profileOpt = parser.addBooleanOption( "profile" );
+		CmdLineParser.Option profileReportOpt = parser.addStringOption( "profileReport" );
+		CmdLineParser.Option profileBaselineOpt = parser.addStringOption( "profileBaseline" );
+		CmdLineParser.Option profileThresholdOpt = parser.addIntegerOption( "profileThreshold" );
+		CmdLineParser.Option jfrOpt = parser.addStringOption( "jfr" );
+		CmdLineParser.Option daemonOpt = parser.addBooleanOption( "daemon" );
+		CmdLineParser.Option connectOpt = parser.addBooleanOption( "connect" );
+		CmdLineParser.Option portOpt = parser.addIntegerOption( "port" );
 		CmdLineParser.Option helpOpt = parser.addBooleanOption( 'h', "help" );
 
 		try {
@@ -77,7 +330,8 @@ public class WebAppBuilder {
 		}
 		catch ( CmdLineParser.OptionException e ) {
 			System.err.println( e.getMessage() );
-			System.exit( 2 );
+			exitStatus = 2;
+			return false;
 		}
 
 		// if help, print the usage, and don't proceed
@@ -87,8 +341,23 @@ public class WebAppBuilder {
 			return false;
 		}
 
+		daemon = (Boolean) parser.getOptionValue( daemonOpt, false );
+		connect = (Boolean) parser.getOptionValue( connectOpt, false );
+		port = (Integer) parser.getOptionValue( portOpt, BuildDaemon.DEFAULT_PORT );
+		if( port < 1 || port > 65535 ) {
+			System.err.println( "The --port argument must be between 1 and 65535." );
+			exitStatus = 2;
+			return false;
+		}
+		String jfrFilename = (String) parser.getOptionValue( jfrOpt );
+		jfrFile = ( jfrFilename != null ) ? resolvePath( workingDir, jfrFilename ) : null;
+
+		if( daemon || connect ) {
+			return true;  // the daemon reads the rest of the arguments of each build that it is sent
+		}
+
 		String projectFilename = (String) parser.getOptionValue( projectFileOpt, "build.json" );
-		projectFile = new File( projectFilename );
+		projectFile = resolvePath( workingDir, projectFilename );
 		if( !projectFile.exists() ) {
 			System.err.format( "The project file %s was not found. Use the --help switch for more information.\n", projectFile.getAbsolutePath() );
 			return false;
@@ -96,14 +365,120 @@ public class WebAppBuilder {
 
 		buildOptions = new BuildOptions();
 		buildOptions.setBuildFileDir( projectFile.getParent() );
-		buildOptions.setOutputDir( (String) parser.getOptionValue( outputDirOpt, System.getProperty( "user.dir" ) ) );
+		buildOptions.setOutputDir( resolvePath( workingDir, (String) parser.getOptionValue( outputDirOpt, "" ) ).getPath() );
 		buildOptions.setVerbose( (Boolean) parser.getOptionValue( verboseOpt, false ) );
 		buildOptions.setDebugOnly( (Boolean) parser.getOptionValue( debugOnlyOpt, false ) );
 		buildOptions.setDebugSuffix( (String) parser.getOptionValue( debugSuffixOpt, "" ) );
 		buildOptions.setMinifyOnly( (Boolean) parser.getOptionValue( minifyOnlyOpt, false ) );
 		buildOptions.setMinifySuffix( (String) parser.getOptionValue( minifySuffixOpt, ".min" ) );
 
+		Integer cssChunkSize = (Integer) parser.getOptionValue( cssChunkSizeOpt, 0 );
+		if( cssChunkSize < 0 ) {
+			System.err.println( "The --cssChunkSize argument must be 0 or greater." );
+			exitStatus = 2;
+			return false;
+		}
+		buildOptions.setCssChunkSize( cssChunkSize );
+		buildOptions.setVerifyCssChunks( (Boolean) parser.getOptionValue( verifyCssChunksOpt, false ) );
+
+		Integer inlineAssetLimit = (Integer) parser.getOptionValue( inlineAssetLimitOpt, 0 );
+		if( inlineAssetLimit < 0 ) {
+			System.err.println( "The --inlineAssetLimit argument must be 0 or greater." );
+			exitStatus = 2;
+			return false;
+		}
+		buildOptions.setInlineAssetLimit( inlineAssetLimit );
+		buildOptions.setFlattenImports( (Boolean) parser.getOptionValue( flattenImportsOpt, false ) );
+		buildOptions.setOptimizeCss( (Boolean) parser.getOptionValue( optimizeCssOpt, false ) );
+
+		Integer workers = (Integer) parser.getOptionValue( workersOpt, 0 );
+		if( workers < 0 ) {
+			System.err.println( "The --workers argument must be 0 or greater." );
+			exitStatus = 2;
+			return false;
+		}
+		buildOptions.setWorkers( workers );
+
+		Integer workerTimeout = (Integer) parser.getOptionValue( workerTimeoutOpt, 300 );
+		if( workerTimeout < 1 ) {
+			System.err.println( "The --workerTimeout argument must be 1 or greater." );
+			exitStatus = 2;
+			return false;
+		}
+		buildOptions.setWorkerTimeout( workerTimeout );
+
+		Integer workerHeap = (Integer) parser.getOptionValue( workerHeapOpt, 0 );
+		if( workerHeap < 0 ) {
+			System.err.println( "The --workerHeap argument must be 0 or greater." );
+			exitStatus = 2;
+			return false;
+		}
+		buildOptions.setWorkerHeap( workerHeap );
+
+		Integer jobs = (Integer) parser.getOptionValue( jobsOpt, Math.max( workers, 1 ) );  // keep the workers busy
+		if( jobs < 1 ) {
+			System.err.println( "The --jobs argument must be 1 or greater." );
+			exitStatus = 2;
+			return false;
+		}
+		buildOptions.setJobs( jobs );
+
+		Integer minifyThreads = (Integer) parser.getOptionValue( minifyThreadsOpt, 0 );
+		if( minifyThreads < 0 ) {
+			System.err.println( "The --minifyThreads argument must be 0 or greater." );
+			exitStatus = 2;
+			return false;
+		}
+		buildOptions.setMinifyThreads( minifyThreads );
+
+		Integer cacheSize = (Integer) parser.getOptionValue( cacheSizeOpt, 100 );
+		if( cacheSize < 1 ) {
+			System.err.println( "The --cacheSize argument must be 1 or greater." );
+			exitStatus = 2;
+			return false;
+		}
+		String cacheDir = (String) parser.getOptionValue( cacheDirOpt );
+		buildOptions.setCacheDir( ( cacheDir != null ) ? resolvePath( workingDir, cacheDir ).getPath() : null );
+		String actionCacheDir = (String) parser.getOptionValue( actionCacheDirOpt );
+		buildOptions.setActionCacheDir( ( actionCacheDir != null ) ? resolvePath( workingDir, actionCacheDir ).getPath() : null );
+		buildOptions.setCacheSize( cacheSize * 1024L * 1024L );
+		changedFilesList = (String) parser.getOptionValue( changedFilesOpt );
+		printAffected = (Boolean) parser.getOptionValue( printAffectedOpt, false );
+
+		buildOptions.setLowMemory( (Boolean) parser.getOptionValue( lowMemoryOpt, false ) );
+		buildOptions.setForce( (Boolean) parser.getOptionValue( forceOpt, false ) );
+		buildOptions.setDedupeFiles( (Boolean) parser.getOptionValue( dedupeFilesOpt, false ) );
+		buildOptions.setWatch( (Boolean) parser.getOptionValue( watchOpt, false ) );
+		buildOptions.setGzipExhaustive( (Boolean) parser.getOptionValue( gzipExhaustiveOpt, false ) );
+		buildOptions.setGzip( (Boolean) parser.getOptionValue( gzipOpt, false ) || buildOptions.getGzipExhaustive() );
+
+		Integer profileThreshold = (Integer) parser.getOptionValue( profileThresholdOpt, 10 );
+		if( profileThreshold < 0 ) {
+			System.err.println( "The --profileThreshold argument must be 0 or greater." );
+			exitStatus = 2;
+			return false;
+		}
+		String profileReport = (String) parser.getOptionValue( profileReportOpt );
+		String profileBaseline = (String) parser.getOptionValue( profileBaselineOpt );
+		buildOptions.setProfileReport( ( profileReport != null ) ? resolvePath( workingDir, profileReport ).getPath() : null );
+		buildOptions.setProfileBaseline( ( profileBaseline != null ) ? resolvePath( workingDir, profileBaseline ).getPath() : null );
+		buildOptions.setProfileThreshold( profileThreshold );
+		buildOptions.setProfile( (Boolean) parser.getOptionValue( profileOpt, false ) || profileReport != null || profileBaseline != null );
+
 		return true;
 	}
 
-}
\ No newline at end of file
+
+	/**
+	 * Resolves a path given on the command line against the working directory, if it is not absolute.
+	 *
+	 * @param workingDir
+	 * @param path
+	 * @return The resolved file.
+	 */
+	private static File resolvePath( File workingDir, String path ) {
+		File file = new File( path );
+		return file.isAbsolute() ? file : new File( workingDir, path );
+	}
+
+}
@@ -0,0 +1,265 @@
+package webAppBuilder;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+
+/**
+ * A pool of worker JVMs that packages (or, with --minifyThreads, files) are minified in, so that the compressors'
+ * static state is never shared between threads, and a file which makes a compressor run out of memory (or never
+ * finish) only takes down its worker, instead of the whole build.
+ *
+ * Each worker is a {@link MinifyWorker} process, started from the same class path as the build, with a bounded heap
+ * (see {@link #WorkerPool(int, int, int)}) and the build's line separator and file encoding, so that its output is
+ * the same as if the contents had been minified in the build's own JVM. Tasks are sent to a worker over its
+ * standard input, and its results are read from its standard output. A worker runs one task at a time, and is reused
+ * for the next task. If a worker runs out of memory, crashes, or does not finish a task within the timeout, its task
+ * fails and it is restarted for the next task. Workers are started when they are first needed, and exit when their
+ * standard input is closed (i.e. when the build process exits).
+ *
+ * The protocol is simple: for each task, the coordinator sends the class name of the {@link webAppBuilder.pkg.Package}
+ * whose compressor is to be run (as a {@link DataOutputStream#writeUTF UTF string}), and the contents to minify. The
+ * worker replies with a status byte ({@link #STATUS_OK}, {@link #STATUS_FAILED}, or {@link #STATUS_OUT_OF_MEMORY}),
+ * the minified contents (or the error message, if the task failed), and the warnings that the compressor printed.
+ * Contents, messages and warnings are each sent as an int length followed by that many UTF-8 bytes.
+ */
+public class WorkerPool {
+
+	static final int STATUS_OK = 0;
+	static final int STATUS_FAILED = 1;
+	static final int STATUS_OUT_OF_MEMORY = 2;
+
+	static final int MIN_DEFAULT_HEAP_MEGABYTES = 64;
+
+	private static WorkerPool sharedPool;
+
+	private int size;
+	private int timeoutSeconds;
+	private int heapMegabytes;
+	private BlockingQueue<Worker> idleWorkers;
+	private ScheduledExecutorService watchdog;
+
+
+	/**
+	 * Retrieves the process's pool of workers, which is shared by all builds in the process (i.e. the rebuilds
+	 * of --watch mode, and the builds of a {@link BuildDaemon}), so that its workers stay warm between builds.
+	 * If the pool was created with a different size, timeout or heap, it is replaced.
+	 *
+	 * @param size The number of workers.
+	 * @param timeoutSeconds The time that a worker may take to minify one package (or file).
+	 * @param heapMegabytes The maximum heap of each worker, in megabytes, or 0 for the default.
+	 * @return The pool.
+	 */
+	public static synchronized WorkerPool getSharedPool( int size, int timeoutSeconds, int heapMegabytes ) {
+		if( sharedPool == null || sharedPool.size != size || sharedPool.timeoutSeconds != timeoutSeconds || sharedPool.heapMegabytes != getHeapMegabytes( size, heapMegabytes ) ) {
+			if( sharedPool != null ) {
+				sharedPool.close();
+			}
+			sharedPool = new WorkerPool( size, timeoutSeconds, heapMegabytes );
+		}
+		return sharedPool;
+	}
+
+
+	/**
+	 * Creates a WorkerPool. No workers are started until they are needed.
+	 *
+	 * Each worker is started with a maximum heap (-Xmx) of heapMegabytes. By default, the build's own maximum heap
+	 * is shared between the workers (with at least {@link #MIN_DEFAULT_HEAP_MEGABYTES} each), so that a pool of
+	 * workers does not use many times the memory that the build would have used on its own.
+	 *
+	 * @param size The number of workers.
+	 * @param timeoutSeconds The time that a worker may take to minify one package (or file).
+	 * @param heapMegabytes The maximum heap of each worker, in megabytes, or 0 for the default.
+	 */
+	public WorkerPool( int size, int timeoutSeconds, int heapMegabytes ) {
+		this.size = size;
+		this.timeoutSeconds = timeoutSeconds;
+		this.heapMegabytes = getHeapMegabytes( size, heapMegabytes );
+
+		idleWorkers = new ArrayBlockingQueue<Worker>( size );
+		for( int i = 1; i <= size; i++ ) {
+			idleWorkers.add( new Worker( i ) );
+		}
+		watchdog = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable runnable ) {
+				Thread thread = new Thread( runnable, "worker-watchdog" );
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+	}
+
+
+	/**
+	 * Retrieves the maximum heap of each worker in a pool.
+	 *
+	 * @param size The number of workers.
+	 * @param heapMegabytes The maximum heap that was asked for, in megabytes, or 0 for the default.
+	 * @return The maximum heap of each worker, in megabytes.
+	 */
+	private static int getHeapMegabytes( int size, int heapMegabytes ) {
+		if( heapMegabytes > 0 ) {
+			return heapMegabytes;
+		}
+		long buildHeapMegabytes = Runtime.getRuntime().maxMemory() / ( 1024 * 1024 );
+		return (int) Math.max( buildHeapMegabytes / size, MIN_DEFAULT_HEAP_MEGABYTES );
+	}
+
+
+	/**
+	 * Minifies contents in the next idle worker, waiting for a worker to become idle if they are all busy.
+	 *
+	 * @param packageClass The class name of the Package whose compressor is run.
+	 * @param contents The contents to minify.
+	 * @param err The stream to print the compressor's warnings to.
+	 * @return The minified contents.
+	 * @throws IOException If the contents could not be minified, or the worker failed.
+	 */
+	public String minify( String packageClass, String contents, PrintStream err ) throws IOException {
+		Worker worker;
+		try {
+			worker = idleWorkers.take();
+		} catch( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException( "Interrupted while waiting for a minification worker" );
+		}
+
+		try {
+			return worker.minify( packageClass, contents, err );
+		} finally {
+			idleWorkers.add( worker );
+		}
+	}
+
+
+	/**
+	 * Stops the pool's idle workers.
+	 */
+	public void close() {
+		for( Worker worker : idleWorkers ) {
+			worker.stop();
+		}
+		watchdog.shutdownNow();
+	}
+
+
+	/**
+	 * Reads a string which was sent as an int length followed by UTF-8 bytes.
+	 *
+	 * @param input The stream to read from.
+	 * @return The string.
+	 * @throws IOException If the stream could not be read.
+	 */
+	static String readString( DataInputStream input ) throws IOException {
+		byte[] bytes = new byte[ input.readInt() ];
+		input.readFully( bytes );
+		return new String( bytes, "UTF-8" );
+	}
+
+
+	/**
+	 * Writes a string as an int length followed by UTF-8 bytes.
+	 *
+	 * @param output The stream to write to.
+	 * @param str The string.
+	 * @throws IOException If the stream could not be written.
+	 */
+	static void writeString( DataOutputStream output, String str ) throws IOException {
+		byte[] bytes = str.getBytes( "UTF-8" );
+		output.writeInt( bytes.length );
+		output.write( bytes );
+	}
+
+
+	/**
+	 * A single worker process, which is started when it is first given a task, and restarted after it fails.
+	 */
+	private class Worker {
+		private int id;
+		private Process process;
+		private DataOutputStream input;   // the worker's standard input
+		private DataInputStream output;   // the worker's standard output
+
+		public Worker( int id ) {
+			this.id = id;
+		}
+
+		public String minify( String packageClass, String contents, PrintStream err ) throws IOException {
+			if( process == null || !process.isAlive() ) {
+				start();
+			}
+
+			// Kill the worker if it takes too long. Reading its output then fails, and it is restarted for the next task
+			final Process taskProcess = process;
+			final AtomicBoolean timedOut = new AtomicBoolean();
+			ScheduledFuture<?> timeout = watchdog.schedule( new Runnable() {
+				@Override
+				public void run() {
+					timedOut.set( true );
+					taskProcess.destroyForcibly();
+				}
+			}, timeoutSeconds, TimeUnit.SECONDS );
+
+			int status;
+			String result;
+			String warnings;
+			try {
+				input.writeUTF( packageClass );
+				writeString( input, contents );
+				input.flush();
+
+				status = output.readUnsignedByte();
+				result = readString( output );
+				warnings = readString( output );
+
+			} catch( IOException ex ) {
+				stop();
+				if( timedOut.get() ) {
+					throw new IOException( "Minification worker " + id + " did not finish within " + timeoutSeconds + " seconds, and was restarted" );
+				}
+				throw new IOException( "Minification worker " + id + " exited unexpectedly, and will be restarted", ex );
+
+			} finally {
+				timeout.cancel( false );
+			}
+
+			err.print( warnings );
+			if( status == STATUS_OK ) {
+				return result;
+			}
+			if( status == STATUS_OUT_OF_MEMORY ) {
+				stop();
+				throw new IOException( "Minification worker " + id + " ran out of memory, and will be restarted" );
+			}
+			throw new IOException( "Minification failed in worker " + id + ": " + result );
+		}
+
+		private void start() throws IOException {
+			String java = new File( System.getProperty( "java.home" ), "bin" + File.separator + "java" ).getPath();
+			ProcessBuilder builder = new ProcessBuilder(
+				java,
+				"-Xmx" + heapMegabytes + "m",
+				"-Dline.separator=" + System.getProperty( "line.separator" ),
+				"-Dfile.encoding=" + System.getProperty( "file.encoding" ),
+				"-cp", System.getProperty( "java.class.path" ),
+				MinifyWorker.class.getName()
+			);
+			builder.redirectError( ProcessBuilder.Redirect.INHERIT );
+
+			process = builder.start();
+			input = new DataOutputStream( new BufferedOutputStream( process.getOutputStream() ) );
+			output = new DataInputStream( new BufferedInputStream( process.getInputStream() ) );
+		}
+
+		public void stop() {
+			if( process != null ) {
+				process.destroyForcibly();
+				process = null;
+			}
+		}
+	}
+
+}
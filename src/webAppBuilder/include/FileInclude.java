@@ -4,6 +4,7 @@ import java.util.*;
 import java.io.*;
 import webAppBuilder.BuildOptions;
 import webAppBuilder.BuildFileException;
+import webAppBuilder.FileHelper;
 import webAppBuilder.pkg.Package;
 
 /**
@@ -50,4 +51,29 @@ public class FileInclude extends Include {
 		return list;
 	}
 
+
+	/**
+	 * Retrieves the directory that the FileInclude's file is in.
+	 *
+	 * @return The parent directory of the file, in a Collection.
+	 */
+	@Override
+	public Collection<File> getDirectories() {
+		List<File> list = new LinkedList<File>();
+		list.add( file.getAbsoluteFile().getParentFile() );
+		return list;
+	}
+
+
+	/**
+	 * Determines if the given file is the FileInclude's file.
+	 *
+	 * @param file The normalized absolute path of the file.
+	 * @return True if the file is the FileInclude's file.
+	 */
+	@Override
+	public boolean matches( File file ) {
+		return FileHelper.normalize( this.file ).equals( file );
+	}
+
 }
@@ -0,0 +1,160 @@
+package webAppBuilder.include;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import webAppBuilder.BuildFileException;
+
+/**
+ * The `include` and `exclude` glob patterns of a 'directory' or 'tree' include directive, which filter
+ * the files (and, for exclude patterns, prune the subdirectories) under the include's directory.
+ *
+ * Patterns use the syntax of {@link FileSystem#getPathMatcher(String) glob PathMatchers}, and are matched
+ * against each path relative to the include's directory, using forward slashes. A pattern without a slash
+ * also matches the name of a file or directory at any depth (so an exclude of "node_modules" prunes every
+ * node_modules directory in the tree). A directory is pruned if it matches an exclude pattern, or an exclude
+ * pattern ending in "/**" with that suffix removed (so "test/**" prunes the "test" directory itself).
+ */
+public class PathPatterns implements DirectoryStream.Filter<Path> {
+
+	private Path root;
+	private List<PathMatcher> includeMatchers = new ArrayList<PathMatcher>();
+	private List<PathMatcher> excludeMatchers = new ArrayList<PathMatcher>();
+	private List<PathMatcher> excludeDirectoryMatchers = new ArrayList<PathMatcher>();
+	private List<PathMatcher> includeNameMatchers = new ArrayList<PathMatcher>();
+	private List<PathMatcher> excludeNameMatchers = new ArrayList<PathMatcher>();
+
+
+	/**
+	 * Creates the PathPatterns for an include directive.
+	 *
+	 * @param root The directory of the include directive, which the patterns are relative to.
+	 * @param includePatterns The glob patterns that files must match at least one of to be included. If empty,
+	 *   all files are included.
+	 * @param excludePatterns The glob patterns of files and directories to exclude.
+	 * @throws BuildFileException If a pattern is not a valid glob.
+	 */
+	public PathPatterns( File root, List<String> includePatterns, List<String> excludePatterns ) {
+		this.root = root.getAbsoluteFile().toPath().normalize();
+
+		for( String pattern : includePatterns ) {
+			addMatcher( pattern, includeMatchers, includeNameMatchers );
+		}
+		for( String pattern : excludePatterns ) {
+			addMatcher( pattern, excludeMatchers, excludeNameMatchers );
+			if( pattern.endsWith( "/**" ) ) {
+				excludeDirectoryMatchers.add( createMatcher( pattern.substring( 0, pattern.length() - 3 ) ) );
+			}
+		}
+	}
+
+
+	/**
+	 * Determines if there are no patterns, in which case every file and directory is accepted.
+	 *
+	 * @return True if there are no include or exclude patterns.
+	 */
+	public boolean isEmpty() {
+		return includeMatchers.isEmpty() && excludeMatchers.isEmpty();
+	}
+
+
+	/**
+	 * Determines if a file is accepted by the patterns: it matches an include pattern (if there are any),
+	 * and does not match an exclude pattern.
+	 *
+	 * @param file The file.
+	 * @return True if the file is accepted.
+	 */
+	public boolean acceptsFile( File file ) {
+		Path path = file.getAbsoluteFile().toPath().normalize();
+		Path relativePath = root.relativize( path );
+
+		if( !includeMatchers.isEmpty() && !matches( relativePath, includeMatchers, includeNameMatchers ) ) {
+			return false;
+		}
+		return !matches( relativePath, excludeMatchers, excludeNameMatchers );
+	}
+
+
+	/**
+	 * Determines if a subdirectory should be walked: it does not match an exclude pattern. Include
+	 * patterns never prune directories, as files deeper in the tree may match them.
+	 *
+	 * @param dir The normalized absolute path of the directory.
+	 * @return True if the directory should be walked, or false if it should be pruned.
+	 */
+	@Override
+	public boolean accept( Path dir ) {
+		Path relativePath = root.relativize( dir );
+
+		return !matches( relativePath, excludeMatchers, excludeNameMatchers )
+			&& !matches( relativePath, excludeDirectoryMatchers, Collections.<PathMatcher>emptyList() );
+	}
+
+
+	/**
+	 * Determines if a relative path matches any of the given path matchers, or if its name matches
+	 * any of the given name matchers.
+	 *
+	 * @param relativePath
+	 * @param pathMatchers
+	 * @param nameMatchers
+	 * @return True if there is a match.
+	 */
+	private static boolean matches( Path relativePath, List<PathMatcher> pathMatchers, List<PathMatcher> nameMatchers ) {
+		Path name = relativePath.getFileName();
+
+		for( PathMatcher matcher : pathMatchers ) {
+			if( matcher.matches( relativePath ) ) {
+				return true;
+			}
+		}
+		for( PathMatcher matcher : nameMatchers ) {
+			if( name != null && matcher.matches( name ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Adds the matcher for a pattern, and if the pattern has no slash, adds it to the name matchers as well.
+	 *
+	 * @param pattern
+	 * @param pathMatchers
+	 * @param nameMatchers
+	 */
+	private static void addMatcher( String pattern, List<PathMatcher> pathMatchers, List<PathMatcher> nameMatchers ) {
+		PathMatcher matcher = createMatcher( pattern );
+		pathMatchers.add( matcher );
+		if( !pattern.contains( "/" ) ) {
+			nameMatchers.add( matcher );
+		}
+	}
+
+
+	/**
+	 * Creates a glob PathMatcher for a pattern, which always uses forward slashes (as the build.json file
+	 * does), regardless of operating system.
+	 *
+	 * @param pattern
+	 * @return The PathMatcher.
+	 * @throws BuildFileException If the pattern is not a valid glob.
+	 */
+	private static PathMatcher createMatcher( String pattern ) {
+		FileSystem fileSystem = FileSystems.getDefault();
+		String separator = fileSystem.getSeparator();
+		if( !separator.equals( "/" ) ) {
+			pattern = pattern.replace( "/", separator + separator );  // the separator must be escaped in a glob (i.e. "\\")
+		}
+
+		try {
+			return fileSystem.getPathMatcher( "glob:" + pattern );
+		} catch( IllegalArgumentException ex ) {
+			throw new BuildFileException( "The pattern '" + pattern + "' is not a valid glob pattern", ex );
+		}
+	}
+
+}
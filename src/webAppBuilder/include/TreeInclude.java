@@ -2,9 +2,10 @@ package webAppBuilder.include;
 
 import java.util.*;
 import java.io.*;
-import webAppBuilder.FileHelper;
+import java.nio.file.*;
 import webAppBuilder.BuildOptions;
 import webAppBuilder.BuildFileException;
+import webAppBuilder.FileHelper;
 import webAppBuilder.pkg.Package;
 
 
@@ -21,6 +22,20 @@ public class TreeInclude extends DirectoryInclude {
 	}
 
 
+	/**
+	 * Creates a "tree include" directive, with glob patterns to filter its files. Directories which match
+	 * an exclude pattern are pruned from the tree, and are never listed.
+	 *
+	 * @param includePatterns The glob patterns that files must match at least one of to be included. If empty, all
+	 *   files with the fileExtension are included.
+	 * @param excludePatterns The glob patterns of files and directories to exclude.
+	 * @see PathPatterns
+	 */
+	public TreeInclude( Package pkg, String directory, BuildOptions buildOptions, String fileExtension, List<String> includePatterns, List<String> excludePatterns ) {
+		super( pkg, directory, buildOptions, fileExtension, includePatterns, excludePatterns );
+	}
+
+
 	/**
 	 * Retrieves the collection of files that the TreeInclude represents.
 	 *
@@ -30,11 +45,74 @@ public class TreeInclude extends DirectoryInclude {
 	@Override
 	public Collection<File> getFiles() {
 		try {
-			return FileHelper.listDirectoryFiles( directory, new ExtensionFilenameFilter(), /* recurse */ true );
+			return pkg.getFileIndex().listDirectoryFiles( directory, new ExtensionFilenameFilter(), /* recurse */ true, getDirectoryFilter() );
+
+		} catch( FileNotFoundException ex ) {
+			throw new BuildFileException( "The directory referred to by a 'tree' include in the package '" + pkg.getName() + "' was not found. See cause.", ex );
+		}
+	}
+
+
+	/**
+	 * Retrieves the directory that the TreeInclude represents, and all of its subdirectories.
+	 *
+	 * @return The Collection of directories in the tree.
+	 * @throws BuildFileException If the directory that is referred to by this include does not exist.
+	 */
+	@Override
+	public Collection<File> getDirectories() {
+		List<File> directories = new ArrayList<File>();
+		directories.add( directory );
+
+		try {
+			directories.addAll( pkg.getFileIndex().listSubdirectories( directory, getDirectoryFilter() ) );
 
 		} catch( FileNotFoundException ex ) {
 			throw new BuildFileException( "The directory referred to by a 'tree' include in the package '" + pkg.getName() + "' was not found. See cause.", ex );
 		}
+		return directories;
+	}
+
+
+	/**
+	 * Determines if the given file is (or would be) in the TreeInclude's tree, in a subdirectory that is not pruned,
+	 * and accepted by its filter.
+	 *
+	 * @param file The normalized absolute path of the file.
+	 * @return True if the file is (or would be) one of the TreeInclude's files.
+	 */
+	@Override
+	public boolean matches( File file ) {
+		Path root = FileHelper.normalize( directory ).toPath();
+		Path path = file.toPath();
+		if( !path.startsWith( root ) || path.equals( root ) || !new ExtensionFilenameFilter().accept( file.getParentFile(), file.getName() ) ) {
+			return false;
+		}
+
+		DirectoryStream.Filter<Path> directoryFilter = getDirectoryFilter();
+		if( directoryFilter != null ) {
+			for( Path dir = path.getParent(); !dir.equals( root ); dir = dir.getParent() ) {
+				try {
+					if( !directoryFilter.accept( dir ) ) {
+						return false;  // in a pruned subdirectory
+					}
+				} catch( IOException ex ) {
+					// Treat the directory as not pruned, as the FileIndex does
+				}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Retrieves the filter for the subdirectories of the tree which should be walked, or null if all of them
+	 * should be (i.e. there are no exclude patterns).
+	 *
+	 * @return The directory filter, or null.
+	 */
+	protected DirectoryStream.Filter<Path> getDirectoryFilter() {
+		return pathPatterns.isEmpty() ? null : pathPatterns;
 	}
 
 }
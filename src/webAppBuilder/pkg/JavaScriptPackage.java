@@ -1,17 +1,43 @@
 package webAppBuilder.pkg;
 
 import java.util.*;
+import java.util.regex.*;
 import java.io.*;
+import java.nio.file.Files;
+import webAppBuilder.BuildFileException;
 import webAppBuilder.BuildOptions;
+import webAppBuilder.FileHelper;
+import webAppBuilder.MinifyCache;
 import webAppBuilder.include.Include;
 import org.mozilla.javascript.*;
 import com.yahoo.platform.yui.compressor.*;
+import org.json.*;
 
 /**
  * Represents a package of JavaScript files to be concatenated and minified.
  */
 public class JavaScriptPackage extends Package {
 
+	// The options that the JavaScriptCompressor is run with
+	private static final boolean MUNGE = true;
+	private static final boolean VERBOSE = false;
+	private static final boolean PRESERVE_ALL_SEMICOLONS = false;
+	private static final boolean DISABLE_OPTIMIZATIONS = false;
+	private static final int LINEBREAKPOS = -1;  // no line breaking
+
+	private static final String COMPRESSOR_SIGNATURE = "JavaScriptCompressor:" + MinifyCache.fingerprintClass( JavaScriptCompressor.class )
+		+ ";munge=" + MUNGE + ";preserveAllSemiColons=" + PRESERVE_ALL_SEMICOLONS
+		+ ";disableOptimizations=" + DISABLE_OPTIMIZATIONS + ";linebreakpos=" + LINEBREAKPOS;
+
+	// A "// @require path" annotation, with the path (optionally quoted) in group 1
+	private static final Pattern REQUIRE_PATTERN = Pattern.compile( "^[ \\t]*//[ \\t]*@require[ \\t]+['\"]?([^'\"\\s]+)['\"]?", Pattern.MULTILINE );
+
+	private boolean orderByRequires = false;
+	private List<File> entryPoints = new ArrayList<File>();
+	private int maxChunkSize = 0;  // in kilobytes. 0 to not split the output into chunks
+
+	private List<String> minifiedFiles;  // the minified contents of each file, for the current build, if the output is split into chunks
+
 	/**
 	 * Creates a JavaScriptPackage.
 	 */
@@ -26,33 +52,447 @@ public class JavaScriptPackage extends Package {
 		super( name, filename, includes, buildOptions );
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getCompressorSignature() {
+		return COMPRESSOR_SIGNATURE;
+	}
+
+	/**
+	 * Reads the package's options: "orderByRequires", to order the package's files by their @require annotations,
+	 * "entryPoints", an array of the files (relative to the build.json file) which the package is built from, along
+	 * with the files that they require, and "maxChunkSize", the maximum size (in kilobytes) of the chunk files that
+	 * the package's output is split into (see {@link #writeExtraOutput(String)}).
+	 *
+	 * @param pkgJSON The JSONObject representation of the package.
+	 * @throws JSONException If there is an error parsing the JSON.
+	 */
+	@Override
+	protected void readOptions( JSONObject pkgJSON ) throws JSONException {
+		orderByRequires = pkgJSON.optBoolean( "orderByRequires", false );
+
+		maxChunkSize = pkgJSON.optInt( "maxChunkSize", 0 );
+		if( maxChunkSize < 0 ) {
+			throw new BuildFileException( "The `maxChunkSize` of the package '" + getName() + "' must be 0 or greater" );
+		}
+
+		JSONArray entryPointsArr = pkgJSON.optJSONArray( "entryPoints" );
+		if( entryPointsArr != null ) {
+			for( int i = 0, len = entryPointsArr.length(); i < len; i++ ) {
+				File entryPoint = new File( entryPointsArr.getString( i ) );
+				if( !entryPoint.isAbsolute() ) {
+					entryPoint = new File( getBuildOptions().getBuildFileDir() + entryPointsArr.getString( i ) );
+				}
+				entryPoints.add( entryPoint );
+			}
+		}
+	}
+
+	/**
+	 * Orders the package's files by their @require annotations if "orderByRequires" or "entryPoints" is set in the
+	 * package's definition. A file may declare the files that it depends on with lines such as:
+	 *
+	 *     // @require widgets/Base.js
+	 *
+	 * where the path is relative to the file (and ".js" may be left off). Each file is then placed after the files
+	 * that it requires, and otherwise stays in include order. If entry points are set, only the entry points and the
+	 * files that they require (directly or indirectly) are included, in that order.
+	 *
+	 * @param files The files, in include order.
+	 * @return The ordered files.
+	 * @throws IOException If a file could not be read.
+	 * @throws BuildFileException If a file requires a file which is not in the package, an entry point is not in
+	 *   the package, or the files require each other in a cycle.
+	 */
+	@Override
+	protected Set<File> orderFiles( Set<File> files ) throws IOException {
+		if( !orderByRequires && entryPoints.isEmpty() ) {
+			return files;
+		}
+
+		Map<File, File> packageFiles = new LinkedHashMap<File, File>();  // by normalized path
+		for( File file : files ) {
+			packageFiles.put( FileHelper.normalize( file ), file );
+		}
+
+		Collection<File> roots = files;
+		if( !entryPoints.isEmpty() ) {
+			roots = new ArrayList<File>();
+			for( File entryPoint : entryPoints ) {
+				File file = packageFiles.get( FileHelper.normalize( entryPoint ) );
+				if( file == null ) {
+					throw new BuildFileException( "The entry point '" + entryPoint.getPath() + "' of the package '" + getName() + "' is not one of its files" );
+				}
+				roots.add( file );
+			}
+		}
+
+		Set<File> orderedFiles = new LinkedHashSet<File>();
+		for( File root : roots ) {
+			addWithRequires( root, packageFiles, new LinkedList<File>(), orderedFiles );
+		}
+
+		if( orderedFiles.size() < files.size() ) {
+			getOut().println( "    Left out " + ( files.size() - orderedFiles.size() ) + " file(s) which the entry points do not require" );
+			if( Boolean.TRUE.equals( getBuildOptions().getVerbose() ) ) {
+				for( File file : files ) {
+					if( !orderedFiles.contains( file ) ) {
+						getOut().println( "        " + file.getPath() );
+					}
+				}
+			}
+		}
+		return orderedFiles;
+	}
+
+	/**
+	 * Adds a file to the ordered files, after the files that it requires (depth first).
+	 *
+	 * @param file The file.
+	 * @param packageFiles The package's files, by normalized path.
+	 * @param chain The files whose requires led to the file, to detect cycles.
+	 * @param orderedFiles The ordered files. Updated.
+	 * @throws IOException If a file could not be read.
+	 */
+	private void addWithRequires( File file, Map<File, File> packageFiles, LinkedList<File> chain, Set<File> orderedFiles ) throws IOException {
+		if( orderedFiles.contains( file ) ) {
+			return;
+		}
+		if( chain.contains( file ) ) {
+			StringBuilder cycle = new StringBuilder();
+			for( File chainFile : chain.subList( chain.indexOf( file ), chain.size() ) ) {
+				cycle.append( chainFile.getPath() ).append( " -> " );
+			}
+			throw new BuildFileException( "The files of the package '" + getName() + "' require each other in a cycle: " + cycle + file.getPath() );
+		}
+
+		chain.addLast( file );
+		for( File required : getRequires( file, packageFiles ) ) {
+			addWithRequires( required, packageFiles, chain, orderedFiles );
+		}
+		chain.removeLast();
+		orderedFiles.add( file );
+	}
+
+	/**
+	 * Reads the @require annotations of a file, and resolves them to the package's files.
+	 *
+	 * @param file The file.
+	 * @param packageFiles The package's files, by normalized path.
+	 * @return The files that the file requires, in the order of its annotations.
+	 * @throws IOException If the file could not be read.
+	 * @throws BuildFileException If a required file is not one of the package's files.
+	 */
+	private List<File> getRequires( File file, Map<File, File> packageFiles ) throws IOException {
+		List<File> requires = new ArrayList<File>();
+		Matcher matcher = REQUIRE_PATTERN.matcher( readFile( file ) );
+		while( matcher.find() ) {
+			String path = matcher.group( 1 );
+			File dir = file.getAbsoluteFile().getParentFile();
+			File required = packageFiles.get( FileHelper.normalize( new File( dir, path ) ) );
+			if( required == null && !path.endsWith( ".js" ) ) {
+				required = packageFiles.get( FileHelper.normalize( new File( dir, path + ".js" ) ) );
+			}
+			if( required == null ) {
+				throw new BuildFileException( "The file '" + file.getPath() + "' requires '" + path + "', which is not one of the files of the package '" + getName() + "'" );
+			}
+			requires.add( required );
+		}
+		return requires;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The package's files are needed in memory to split the output into chunks (if "maxChunkSize" is set), so
+	 * they are never streamed.
+	 */
+	@Override
+	protected boolean transformsContents() {
+		return maxChunkSize > 0;
+	}
+
+	/**
+	 * Retrieves the minified contents of the package. If the package's output is split into chunks, each file is
+	 * minified on its own (as with --minifyThreads), so that the chunks can be split from the minified files.
+	 *
+	 * @throws IOException If there is an error creating the minified contents.
+	 */
+	@Override
+	public String getMinifiedContents() throws IOException {
+		if( maxChunkSize <= 0 ) {
+			return super.getMinifiedContents();
+		}
+
+		StringBuilder minifiedContents = new StringBuilder();
+		String lineSeparator = System.getProperty( "line.separator" );
+		for( String minifiedFile : getMinifiedFiles() ) {
+			minifiedContents.append( minifiedFile ).append( lineSeparator );
+		}
+		return minifiedContents.toString();
+	}
+
+	/**
+	 * Retrieves the minified contents of each of the package's files, minifying them once per build.
+	 *
+	 * @return The minified contents of each file, in the order of the package's files.
+	 * @throws IOException If there is an error reading or minifying a file.
+	 */
+	private synchronized List<String> getMinifiedFiles() throws IOException {
+		if( minifiedFiles == null ) {
+			minifiedFiles = minifyEachFile( Math.max( getBuildOptions().getMinifyThreads(), 1 ) );
+		}
+		return minifiedFiles;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void reset() {
+		super.reset();
+		minifiedFiles = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected boolean hasExtraOutput() {
+		return maxChunkSize > 0;
+	}
+
+	/**
+	 * Retrieves the chunk files that the package's manifest lists (and their .gz sidecar files, if the "gzip" flag
+	 * is set in the {@link BuildOptions}), and the manifest itself.
+	 *
+	 * @return The chunk files and the manifest, or no files if the output is not split into chunks.
+	 */
+	@Override
+	protected List<File> getExtraOutputFiles() {
+		if( maxChunkSize <= 0 ) {
+			return super.getExtraOutputFiles();
+		}
+
+		List<File> files = new ArrayList<File>();
+		for( File chunkFile : readManifest() ) {
+			files.add( chunkFile );
+			if( getBuildOptions().getGzip() && chunkFile.getName().endsWith( getBuildOptions().getMinifySuffix() + ".js" ) ) {
+				files.add( new File( chunkFile.getPath() + ".gz" ) );
+			}
+		}
+		files.add( getManifestFile() );
+		return files;
+	}
+
+	/**
+	 * Splits the package's output into numbered chunk files of roughly equal size, at file boundaries, if
+	 * "maxChunkSize" is set in the package's definition. Each output (the 'debug' and the 'minified' output,
+	 * unless either is turned off) is split at the same files, and its chunks are named after the output file
+	 * with the chunk's number (i.e. "app.1.js", "app.1.min.js"). The chunks are listed in load order in a
+	 * manifest, named after the package's filename (i.e. "app.chunks.json"), so that pages can request them
+	 * in parallel. Chunk files from a previous build which are no longer in the manifest are removed.
+	 *
+	 * @param licenseHeader The license header to write into each chunk file.
+	 * @throws IOException If a file could not be read or minified, or a chunk file could not be written.
+	 */
+	@Override
+	protected void writeExtraOutput( String licenseHeader ) throws IOException {
+		BuildOptions buildOptions = getBuildOptions();
+		String lineSeparator = System.getProperty( "line.separator" );
+
+		List<String> debugFiles = null;
+		if( !buildOptions.getMinifyOnly() ) {
+			debugFiles = new ArrayList<String>();
+			for( File file : getBuildFiles() ) {
+				debugFiles.add( getFileContents( file ) + lineSeparator );
+			}
+		}
+		List<String> minifiedFiles = null;
+		if( !buildOptions.getDebugOnly() ) {
+			minifiedFiles = new ArrayList<String>();
+			for( String minifiedFile : getMinifiedFiles() ) {
+				minifiedFiles.add( minifiedFile + lineSeparator );
+			}
+		}
+
+		// The chunks are sized by the output that is served: the minified output, unless only a debug build is written
+		List<Integer> chunkStarts = splitIntoChunks( ( minifiedFiles != null ) ? minifiedFiles : debugFiles, maxChunkSize * 1024 );
+
+		Set<File> staleFiles = new HashSet<File>( readManifest() );
+		List<File> debugChunks = writeChunks( debugFiles, chunkStarts, buildOptions.getDebugSuffix(), licenseHeader, false );
+		List<File> minifiedChunks = writeChunks( minifiedFiles, chunkStarts, buildOptions.getMinifySuffix(), licenseHeader, buildOptions.getGzip() );
+		staleFiles.removeAll( debugChunks );
+		staleFiles.removeAll( minifiedChunks );
+		for( File staleFile : staleFiles ) {
+			staleFile.delete();
+			new File( staleFile.getPath() + ".gz" ).delete();
+		}
+
+		try {
+			JSONObject manifest = new JSONObject();
+			manifest.put( "package", getName() );
+			if( !debugChunks.isEmpty() ) {
+				manifest.put( "debug", getChunkNames( debugChunks ) );
+			}
+			if( !minifiedChunks.isEmpty() ) {
+				manifest.put( "minified", getChunkNames( minifiedChunks ) );
+			}
+			writeOutputFile( getManifestFile(), ( manifest.toString( 2 ) + lineSeparator ).getBytes( "UTF-8" ) );
+
+		} catch( JSONException ex ) {
+			throw new IOException( "The chunk manifest of the package '" + getName() + "' could not be written: " + ex.getMessage(), ex );
+		}
+
+		getOut().println( "    Split into " + chunkStarts.size() + " chunk(s) of up to " + maxChunkSize + "KB" );
+	}
+
+	/**
+	 * Determines where to split the files of the package into chunks: into as few chunks of no more than the
+	 * maximum size as possible (unless a single file is larger than that), of roughly equal size. A file goes
+	 * into the chunk that most of it falls into.
+	 *
+	 * @param files The contents of each file.
+	 * @param maxSize The maximum size of a chunk, in chars.
+	 * @return The index of the first file of each chunk.
+	 */
+	private static List<Integer> splitIntoChunks( List<String> files, long maxSize ) {
+		long totalSize = 0;
+		for( String file : files ) {
+			totalSize += file.length();
+		}
+		long chunkCount = Math.max( 1, ( totalSize + maxSize - 1 ) / maxSize );
+		double targetSize = (double) totalSize / chunkCount;
+
+		List<Integer> chunkStarts = new ArrayList<Integer>();
+		chunkStarts.add( 0 );
+		long chunkSize = 0;
+		long offset = 0;  // the size of the files before the current file
+		for( int i = 0, len = files.size(); i < len; i++ ) {
+			long size = files.get( i ).length();
+			boolean pastTarget = ( offset + size / 2.0 > targetSize * chunkStarts.size() );
+			if( chunkSize > 0 && ( chunkSize + size > maxSize || pastTarget ) ) {
+				chunkStarts.add( i );
+				chunkSize = 0;
+			}
+			chunkSize += size;
+			offset += size;
+		}
+		return chunkStarts;
+	}
+
+	/**
+	 * Writes the chunk files of one of the package's outputs.
+	 *
+	 * @param files The contents of each file (with their line breaks), or null if the output is not written.
+	 * @param chunkStarts The index of the first file of each chunk.
+	 * @param suffix The suffix of the output, which the chunk files are named with.
+	 * @param licenseHeader The license header to write into each chunk file.
+	 * @param gzip True to write a .gz sidecar file for each chunk file.
+	 * @return The chunk files, in order.
+	 * @throws IOException If a chunk file could not be written.
+	 */
+	private List<File> writeChunks( List<String> files, List<Integer> chunkStarts, String suffix, String licenseHeader, boolean gzip ) throws IOException {
+		List<File> chunkFiles = new ArrayList<File>();
+		if( files == null ) {
+			return chunkFiles;
+		}
+
+		for( int chunk = 0; chunk < chunkStarts.size(); chunk++ ) {
+			int end = ( chunk + 1 < chunkStarts.size() ) ? chunkStarts.get( chunk + 1 ) : files.size();
+			StringBuilder contents = new StringBuilder( licenseHeader );
+			for( String file : files.subList( chunkStarts.get( chunk ), end ) ) {
+				contents.append( file );
+			}
+
+			File chunkFile = new File( getBuildOptions().getOutputDir() + FileHelper.insertFileSuffix( getFilename(), "." + ( chunk + 1 ) + suffix ) );
+			byte[] bytes = contents.toString().getBytes();  // default encoding, as FileWriter uses
+			boolean changed = writeOutputFile( chunkFile, bytes );
+			if( gzip ) {
+				writeGzipOutput( chunkFile, bytes, changed );
+			}
+			chunkFiles.add( chunkFile );
+		}
+		return chunkFiles;
+	}
+
+	/**
+	 * Retrieves the list of chunk files for the manifest: their names, which are relative to the manifest.
+	 *
+	 * @param chunkFiles The chunk files.
+	 * @return The names of the chunk files, in order.
+	 */
+	private static JSONArray getChunkNames( List<File> chunkFiles ) {
+		JSONArray chunkNames = new JSONArray();
+		for( File chunkFile : chunkFiles ) {
+			chunkNames.put( chunkFile.getName() );
+		}
+		return chunkNames;
+	}
+
+	/**
+	 * Retrieves the manifest file of the package's chunks.
+	 *
+	 * @return The manifest file.
+	 */
+	private File getManifestFile() {
+		String filename = getFilename();
+		return new File( getBuildOptions().getOutputDir() + filename.substring( 0, filename.lastIndexOf( '.' ) ) + ".chunks.json" );
+	}
+
+	/**
+	 * Reads the chunk files that the package's manifest lists, from the last build.
+	 *
+	 * @return The chunk files, or no files if there is no (readable) manifest.
+	 */
+	private List<File> readManifest() {
+		List<File> chunkFiles = new ArrayList<File>();
+		File manifestFile = getManifestFile();
+		if( !manifestFile.isFile() ) {
+			return chunkFiles;
+		}
+
+		try {
+			JSONObject manifest = new JSONObject( new String( Files.readAllBytes( manifestFile.toPath() ), "UTF-8" ) );  // as it is written
+			for( String key : new String[] { "debug", "minified" } ) {
+				JSONArray chunks = manifest.optJSONArray( key );
+				for( int i = 0, len = ( chunks != null ) ? chunks.length() : 0; i < len; i++ ) {
+					chunkFiles.add( new File( manifestFile.getParentFile(), chunks.getString( i ) ) );
+				}
+			}
+		} catch( IOException | JSONException ex ) {
+			// An unreadable manifest is treated as no manifest. The package is built again, and the manifest rewritten
+		}
+		return chunkFiles;
+	}
+
 	/**
 	 * Compresses the output files
 	 * 
-	 * @param combinedContents The combined (unminified) contents of the package's files)
+	 * @param inputReader The reader of the combined (unminified) contents of the package's files
+	 * @param outputWriter The writer to write the minified contents to
 	 * @throws IOException
 	 */
 	@Override
-	public String createMinifiedContents( String combinedContents ) throws IOException {
-		Reader inputReader = new StringReader( combinedContents );
-		Writer outputWriter = new StringWriter();
-		
+	public void writeMinifiedContents( Reader inputReader, Writer outputWriter ) throws IOException {
 		JavaScriptCompressor compressor = new JavaScriptCompressor( inputReader, new ErrorReporter() {
 			@Override
 			public void warning( String message, String sourceName, int line, String lineSource, int lineOffset ) {
 				if( line < 0 ) {
-					System.err.println( "\n    [COMPRESSOR WARNING] " + message );
+					getErr().println( "\n    [COMPRESSOR WARNING] " + message );
 				} else {
-					System.err.println( "\n    [COMPRESSOR WARNING] " + line + ':' + lineOffset + ':' + message );
+					getErr().println( "\n    [COMPRESSOR WARNING] " + line + ':' + lineOffset + ':' + message );
 				}
 			}
 
 			@Override
 			public void error( String message, String sourceName, int line, String lineSource, int lineOffset ) {
 				if( line < 0 ) {
-					System.err.println( "\n    [COMPRESSOR ERROR] " + message );
+					getErr().println( "\n    [COMPRESSOR ERROR] " + message );
 				} else {
-					System.err.println( "\n    [COMPRESSOR ERROR] " + line + ':' + lineOffset + ':' + message );
+					getErr().println( "\n    [COMPRESSOR ERROR] " + line + ':' + lineOffset + ':' + message );
 				}
 			}
 			
@@ -67,15 +507,7 @@ public class JavaScriptPackage extends Package {
 		
 		
 		// Compress the content
-		boolean munge = true;
-		boolean verbose = false;
-		boolean preserveAllSemiColons = false;
-		boolean disableOptimizations = false;
-		int linebreakpos = -1;  // no line breaking
-		compressor.compress( outputWriter, linebreakpos, munge, verbose, preserveAllSemiColons, disableOptimizations );
-		
-		
-		return outputWriter.toString();
+		compressor.compress( outputWriter, LINEBREAKPOS, MUNGE, VERBOSE, PRESERVE_ALL_SEMICOLONS, DISABLE_OPTIMIZATIONS );
 	}
 	
 }
@@ -4,6 +4,10 @@ import webAppBuilder.*;
 import webAppBuilder.include.*;
 import java.util.*;
 import java.io.*;
+import java.lang.management.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.*;
 import org.json.*;
 
 /**
@@ -11,14 +15,29 @@ import org.json.*;
  */
 public abstract class Package {
 
+	private static final String BUILDER_FINGERPRINT = MinifyCache.fingerprintClass( Package.class );  // part of each stamp, so that a new version of the builder rebuilds every package
+
 	private String name;
 	private String filename;
 	private List<Include> includes;
 	private BuildOptions buildOptions;
+	private String definition;  // the JSON that the package was created from, if it was created by fromJSON()
 
 	private String combinedFileContents;
 	private String minifiedFileContents;
 
+	private PrintStream out = System.out;  // stream for the package's progress messages
+	private PrintStream err = System.err;  // stream for the package's warnings and errors
+
+	private MinifyCache minifyCache;  // optional. null if minified contents are not cached
+	private ActionCache actionCache;  // optional. null if whole-package builds are not cached
+	private WorkerPool workerPool;  // optional. null to minify in this JVM
+	private FileIndex fileIndex;  // the index of directory listings, which may be shared with the other packages of the project
+	private FileContentsCache contentsCache;  // optional. null if file contents are not cached
+	private BuildProfile.PackageProfile profile;  // optional. null if the build is not being profiled
+	private Set<File> excludedFiles;  // normalized absolute paths of files never to include. null for the package's own output files
+	private Set<File> buildFiles;  // the files that the current build reads, once they have been determined. See getBuildFiles()
+
 
 	/**
 	 * Factory method to create the appropriate {@link Package} based on its JSONObject data.
@@ -67,11 +86,22 @@ public abstract class Package {
 			
 			pkg.addIncludeDirective( include );
 		}
+		pkg.readOptions( pkgJSON );
 
+		pkg.definition = pkgJSON.toString();
 		return pkg;
 	}
 
 
+	/**
+	 * Reads the options of the Package which are specific to its type from its JSON definition. None by default.
+	 *
+	 * @param pkgJSON The JSONObject representation of the package.
+	 * @throws JSONException If there is an error parsing the JSON.
+	 */
+	protected void readOptions( JSONObject pkgJSON ) throws JSONException {}
+
+
 	/**
 	 * Creates a Package.
 	 */
@@ -118,6 +148,449 @@ public abstract class Package {
 	}
 
 
+	/**
+	 * Retrieves the filename of the Package's output, relative to the output directory.
+	 *
+	 * @return The filename.
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+
+	/**
+	 * Retrieves the {@link Include Include Directives} of the Package.
+	 *
+	 * @return The Include directives, in order.
+	 */
+	public List<Include> getIncludes() {
+		return includes;
+	}
+
+
+	/**
+	 * Retrieves the JSON definition that the Package was created from, which can be compared to
+	 * determine if the package's definition in the build.json file has changed.
+	 *
+	 * @return The JSON definition of the Package, or null if it was not created from JSON.
+	 */
+	public String getDefinition() {
+		return definition;
+	}
+
+
+	/**
+	 * Retrieves the output files for the Package: the 'debug' (concatenated) file, and the 'minified'
+	 * file, in that order. Note that either of these may not be written, depending on the {@link BuildOptions}.
+	 *
+	 * @return The output files.
+	 */
+	public List<File> getOutputFiles() {
+		String debugFilename = FileHelper.insertFileSuffix( filename, buildOptions.getDebugSuffix() );
+		String minifiedFilename = FileHelper.insertFileSuffix( filename, buildOptions.getMinifySuffix() );
+
+		List<File> outputFiles = new ArrayList<File>();
+		outputFiles.add( new File( buildOptions.getOutputDir() + debugFilename ) );
+		outputFiles.add( new File( buildOptions.getOutputDir() + minifiedFilename ) );
+		return outputFiles;
+	}
+
+
+	/**
+	 * Retrieves the stamp file of the Package, which records what its output files were built from (see
+	 * {@link BuildStamp}). It is a hidden file next to the output files, named after the package's filename.
+	 *
+	 * @return The stamp file.
+	 */
+	public File getStampFile() {
+		File outputFile = new File( buildOptions.getOutputDir() + filename );
+		return new File( outputFile.getParentFile(), "." + outputFile.getName() + ".stamp" );
+	}
+
+
+	/**
+	 * Discards the Package's combined and minified contents, so that they are re-created from the
+	 * package's files the next time they are needed (i.e. when a file has changed).
+	 */
+	public void reset() {
+		combinedFileContents = null;
+		minifiedFileContents = null;
+		buildFiles = null;
+	}
+
+
+	/**
+	 * Sets the streams that the Package writes its progress messages, warnings, and errors to.
+	 * By default, these are System.out and System.err. When packages are built in parallel,
+	 * each is given its own streams so that the output of one package does not interleave with
+	 * the output of another.
+	 *
+	 * @param out The stream for progress messages.
+	 * @param err The stream for warnings and errors.
+	 */
+	public void setLogStreams( PrintStream out, PrintStream err ) {
+		this.out = out;
+		this.err = err;
+	}
+
+
+	/**
+	 * Sets the cache that the Package looks up (and stores) its minified contents in, so that
+	 * unchanged files do not need to be minified again.
+	 *
+	 * @param minifyCache The cache, or null to always minify.
+	 */
+	public void setMinifyCache( MinifyCache minifyCache ) {
+		this.minifyCache = minifyCache;
+	}
+
+
+	/**
+	 * Sets the cache that the Package restores its output files from (and stores them in), so that a
+	 * package whose files and configuration are the same as in an earlier build is not built again.
+	 *
+	 * @param actionCache The cache, or null to always build.
+	 */
+	public void setActionCache( ActionCache actionCache ) {
+		this.actionCache = actionCache;
+	}
+
+
+	/**
+	 * Sets the pool of worker JVMs that the Package's contents are minified in, instead of in the build's own JVM.
+	 *
+	 * @param workerPool The pool, or null to minify in this JVM.
+	 */
+	public void setWorkerPool( WorkerPool workerPool ) {
+		this.workerPool = workerPool;
+	}
+
+
+	/**
+	 * Sets the index of directory listings that the Package's {@link Include Include Directives} list
+	 * their directories from. The Project shares one index between all of its packages.
+	 *
+	 * @param fileIndex The index.
+	 */
+	public void setFileIndex( FileIndex fileIndex ) {
+		this.fileIndex = fileIndex;
+	}
+
+
+	/**
+	 * Retrieves the index of directory listings that the Package's {@link Include Include Directives}
+	 * list their directories from. If one has not been set, the Package creates its own.
+	 *
+	 * @return The index.
+	 */
+	public synchronized FileIndex getFileIndex() {
+		if( fileIndex == null ) {
+			fileIndex = new FileIndex();
+		}
+		return fileIndex;
+	}
+
+
+	/**
+	 * Sets the cache that the Package reads the contents of its files through, so that files which
+	 * have not changed are not read from disk again.
+	 *
+	 * @param contentsCache The cache, or null to always read files from disk.
+	 */
+	public void setFileContentsCache( FileContentsCache contentsCache ) {
+		this.contentsCache = contentsCache;
+	}
+
+
+	/**
+	 * Sets the profile that the phases of the Package's build are recorded into.
+	 *
+	 * @param profile The Package's profile, or null if the build is not being profiled.
+	 */
+	public void setProfile( BuildProfile.PackageProfile profile ) {
+		this.profile = profile;
+	}
+
+
+	/**
+	 * Starts timing a phase of the Package's build, for the Package's profile.
+	 *
+	 * @param phase The phase.
+	 * @return The Timer, which does nothing if the build is not being profiled.
+	 */
+	protected BuildProfile.Timer startTimer( BuildProfile.Phase phase ) {
+		return new BuildProfile.Timer( profile, phase );
+	}
+
+
+	/**
+	 * Reads the contents of one of the Package's files, through the {@link FileContentsCache} if one has been set.
+	 *
+	 * @param file The file to read.
+	 * @return The contents of the file.
+	 * @throws IOException If the file could not be read.
+	 */
+	protected String readFile( File file ) throws IOException {
+		BuildProfile.Timer timer = startTimer( BuildProfile.Phase.READ );
+		BuildEvents.FileRead event = new BuildEvents.FileRead();
+		event.begin();
+
+		String contents = ( contentsCache != null ) ? contentsCache.getCachedContents( file ) : null;
+		boolean cacheHit = ( contents != null );
+		if( !cacheHit ) {
+			contents = ( contentsCache != null ) ? contentsCache.readContents( file ) : FileHelper.getContents( file );
+		}
+
+		event.end();
+		if( event.shouldCommit() ) {
+			event.packageName = name;
+			event.path = file.getPath();
+			event.bytes = file.length();
+			event.cacheHit = cacheHit;
+			event.commit();
+		}
+		if( profile != null ) {
+			timer.stop( file.length(), contents.length(), 1 );
+		}
+		return contents;
+	}
+
+
+	/**
+	 * Retrieves the contents of one of the Package's files as they are to be written into its output files.
+	 * These are the contents of the file as they are, unless a subclass transforms them (see {@link #transformsContents()}).
+	 *
+	 * @param file The file to read.
+	 * @return The contents of the file.
+	 * @throws IOException If the file could not be read.
+	 */
+	protected String getFileContents( File file ) throws IOException {
+		return readFile( file );
+	}
+
+
+	/**
+	 * Determines if the Package transforms its contents with the current {@link BuildOptions} (in {@link #getFileContents(File)},
+	 * or once they are minified), in which case the files are never streamed into the output files as they are (even in
+	 * low memory mode).
+	 *
+	 * @return True if the contents of the files are transformed.
+	 */
+	protected boolean transformsContents() {
+		return false;
+	}
+
+
+	/**
+	 * Retrieves the files other than the Package's own files that its output files are built from, such as the
+	 * assets which are inlined into a stylesheet. These are part of the Package's {@link BuildStamp} and its
+	 * {@link ActionCache} key, so that a change to one of them builds the Package again, and a change to one of
+	 * them affects the Package in --watch mode and with --changedFiles.
+	 *
+	 * @return The files, in order. None by default.
+	 * @throws IOException If one of the Package's files could not be read to find them.
+	 */
+	public Collection<File> getDependencies() throws IOException {
+		return Collections.emptyList();
+	}
+
+
+	/**
+	 * Determines if the Package writes output files other than its 'debug' and 'minified' output files with its
+	 * current definition (see {@link #writeExtraOutput(String)}). Such a Package's output is not stored in (or
+	 * restored from) the {@link ActionCache}, as the extra output files are only known once they are written.
+	 *
+	 * @return True if the Package writes extra output files. False by default.
+	 */
+	protected boolean hasExtraOutput() {
+		return false;
+	}
+
+
+	/**
+	 * Retrieves the extra output files that the Package has written (as of the files on disk), which are part of its
+	 * {@link BuildStamp}.
+	 *
+	 * @return The extra output files. None by default.
+	 */
+	protected List<File> getExtraOutputFiles() {
+		return Collections.emptyList();
+	}
+
+
+	/**
+	 * Writes the Package's extra output files, once its 'debug' and 'minified' output files have been written.
+	 * Does nothing by default.
+	 *
+	 * @param licenseHeader The license header to write into the output files.
+	 * @throws IOException If a file could not be written.
+	 */
+	protected void writeExtraOutput( String licenseHeader ) throws IOException {}
+
+
+	/**
+	 * Retrieves the options that the Package is being built with.
+	 *
+	 * @return The build options.
+	 */
+	protected BuildOptions getBuildOptions() {
+		return buildOptions;
+	}
+
+
+	/**
+	 * Retrieves the stream that progress messages for the Package should be written to.
+	 *
+	 * @return The output stream.
+	 */
+	protected PrintStream getOut() {
+		return out;
+	}
+
+
+	/**
+	 * Retrieves the stream that warnings and errors for the Package should be written to.
+	 *
+	 * @return The error stream.
+	 */
+	protected PrintStream getErr() {
+		return err;
+	}
+
+
+	/**
+	 * Retrieves the files that the Package's {@link Include Include Directives} resolve to, in the
+	 * order of the includes, and with duplicates removed.
+	 *
+	 * @return The ordered Set of files.
+	 */
+	public Set<File> getFiles() {
+		BuildProfile.Timer timer = startTimer( BuildProfile.Phase.RESOLVE );
+		Set<File> files = new LinkedHashSet<File>();
+		Set<File> excludedFiles = getExcludedFiles();
+
+		// Put the files into the LinkedHashSet, to remove duplicates and leave them in order. Output files are left
+		// out, so that generated content never accidentally gets included in the build files by including a directory
+		// or tree that encompasses them
+		for( int i = 0, len = includes.size(); i < len; i++ ) {
+			Include include = includes.get( i );
+			BuildEvents.IncludeResolve event = new BuildEvents.IncludeResolve();
+			event.begin();
+
+			Collection<File> includeFiles = include.getFiles();
+			for( File file : includeFiles ) {
+				if( !excludedFiles.contains( FileHelper.normalize( file ) ) ) {
+					files.add( file );
+				}
+			}
+
+			event.end();
+			if( event.shouldCommit() ) {
+				event.packageName = name;
+				event.includeType = include.getClass().getSimpleName();
+				event.includeIndex = i;
+				event.fileCount = includeFiles.size();
+				event.commit();
+			}
+		}
+
+		timer.stop( 0, 0, files.size() );
+		return files;
+	}
+
+
+	/**
+	 * Retrieves the files that the Package's output is built from: its {@link #getFiles() files}, less the files
+	 * whose contents are byte-identical to an earlier file if the "dedupeFiles" flag is set in the {@link BuildOptions},
+	 * and {@link #orderFiles(Set) ordered} for the Package's type.
+	 * The files are determined once per build (until the Package is {@link #reset()}).
+	 *
+	 * @return The ordered Set of files.
+	 * @throws IOException If a file could not be read to compare it with the other files.
+	 */
+	protected synchronized Set<File> getBuildFiles() throws IOException {
+		if( buildFiles == null ) {
+			buildFiles = orderFiles( buildOptions.getDedupeFiles() ? removeDuplicateFiles( getFiles() ) : getFiles() );
+		}
+		return buildFiles;
+	}
+
+
+	/**
+	 * Orders (and may leave out some of) the files that the Package's output is built from. By default, the
+	 * files are in the order of the Package's includes.
+	 *
+	 * @param files The files, in include order.
+	 * @return The files, in the order that they are to be concatenated.
+	 * @throws IOException If a file could not be read to determine its place.
+	 */
+	protected Set<File> orderFiles( Set<File> files ) throws IOException {
+		return files;
+	}
+
+
+	/**
+	 * Removes the files whose contents are byte-identical to an earlier file in the given files, and warns
+	 * about each file that was removed.
+	 *
+	 * @param files The files, in order.
+	 * @return The files with the duplicates removed, in order.
+	 * @throws IOException If a file could not be read.
+	 */
+	private Set<File> removeDuplicateFiles( Set<File> files ) throws IOException {
+		Set<File> uniqueFiles = new LinkedHashSet<File>();
+		Map<String, File> filesByHash = new HashMap<String, File>();
+		List<String> duplicates = new ArrayList<String>();
+
+		for( File file : files ) {
+			String hash = FileHelper.toHex( FileHelper.hash( file ) );
+			File original = filesByHash.get( hash );
+			if( original == null ) {
+				filesByHash.put( hash, file );
+				uniqueFiles.add( file );
+			} else {
+				duplicates.add( file.getPath() + " (identical to " + original.getPath() + ")" );
+			}
+		}
+
+		if( !duplicates.isEmpty() ) {
+			err.println( "    Warning: the package '" + name + "' includes " + duplicates.size() + " duplicate file(s), which were left out:" );
+			for( String duplicate : duplicates ) {
+				err.println( "        " + duplicate );
+			}
+		}
+		return uniqueFiles;
+	}
+
+
+	/**
+	 * Sets the files which are never included in the Package, even if one of its {@link Include Include Directives}
+	 * resolves to them. The Project sets this to the output files of all of its packages.
+	 *
+	 * @param excludedFiles The files to exclude.
+	 */
+	public void setExcludedFiles( Collection<File> excludedFiles ) {
+		Set<File> normalizedFiles = new HashSet<File>();
+		for( File file : excludedFiles ) {
+			normalizedFiles.add( FileHelper.normalize( file ) );
+		}
+		this.excludedFiles = normalizedFiles;
+	}
+
+
+	/**
+	 * Retrieves the files which are never included in the Package. Defaults to the package's own output files.
+	 *
+	 * @return The normalized absolute paths of the files to exclude.
+	 */
+	private Set<File> getExcludedFiles() {
+		if( excludedFiles == null ) {
+			setExcludedFiles( getOutputFiles() );
+		}
+		return excludedFiles;
+	}
+
+
 	/**
 	 * Retrieves the combined (concatenated) content of all of the package's files.
 	 *
@@ -129,22 +602,22 @@ public abstract class Package {
 			return combinedFileContents;
 		}
 
-		Set<File> files = new LinkedHashSet<File>();
 		StringBuilder fileContents = new StringBuilder();
 		String lineSeparator = System.getProperty( "line.separator" );
 
-		// Put the files into the LinkedHashSet, to remove duplicates and leave them in order
-		for( Include include : includes ) {
-			files.addAll( include.getFiles() );
-		}
+		// Take the files, read them, and concatenate their contents
+		for( File file : getBuildFiles() ) {
+			String contents = getFileContents( file );
 
-		// Now take the files, read them, and concatenate their contents
-		for( File file : files ) {
-			fileContents.append( FileHelper.getContents( file ) );
+			BuildProfile.Timer timer = startTimer( BuildProfile.Phase.CONCAT );
+			fileContents.append( contents );
 			fileContents.append( lineSeparator );  // make sure there is a line break after each file, to account for any last line in the file that maybe has a double slash comment. Don't want that accidentally commenting out the first line of the next file!
+			timer.stop( contents.length(), contents.length() + lineSeparator.length(), 1 );
 		}
 
+		BuildProfile.Timer timer = startTimer( BuildProfile.Phase.CONCAT );
 		combinedFileContents = fileContents.toString();
+		timer.stop( 0, 0, 0 );
 		return combinedFileContents;
 	}
 
@@ -160,11 +633,150 @@ public abstract class Package {
 			return minifiedFileContents;
 		}
 
-		minifiedFileContents = createMinifiedContents( getCombinedContents() );
+		int minifyThreads = buildOptions.getMinifyThreads();
+		if( minifyThreads > 0 ) {
+			minifiedFileContents = createMinifiedContentsPerFile( minifyThreads );
+		} else {
+			minifiedFileContents = minify( getCombinedContents(), getOutputFiles().get( 1 ) );
+		}
 		return minifiedFileContents;
 	}
 
 
+	/**
+	 * Creates the minified contents of the Package by minifying each of its files on its own (across
+	 * a pool of threads), and then concatenating the minified files in include order. Because each
+	 * file is minified separately, munging of variable names stays local to each file.
+	 *
+	 * @param threads The number of files to minify at the same time.
+	 * @throws IOException If there is an error reading or minifying a file.
+	 */
+	protected String createMinifiedContentsPerFile( int threads ) throws IOException {
+		StringBuilder minifiedContents = new StringBuilder();
+		String lineSeparator = System.getProperty( "line.separator" );
+
+		// Put a line break after each file, in case a file's last statement relies on a line break to be terminated
+		for( String minifiedFile : minifyEachFile( threads ) ) {
+			minifiedContents.append( minifiedFile );
+			minifiedContents.append( lineSeparator );
+		}
+		return minifiedContents.toString();
+	}
+
+
+	/**
+	 * Minifies each of the Package's files on its own, across a pool of threads.
+	 *
+	 * @param threads The number of files to minify at the same time.
+	 * @return The minified contents of each file, in the order of the Package's files.
+	 * @throws IOException If there is an error reading or minifying a file.
+	 */
+	protected List<String> minifyEachFile( int threads ) throws IOException {
+		Set<File> files = getBuildFiles();
+		List<String> minifiedFiles = new ArrayList<String>();
+		if( files.isEmpty() ) {
+			return minifiedFiles;
+		}
+
+		ExecutorService executor = ThreadHelper.newFixedThreadPool( Math.min( threads, files.size() ), "minify" );
+		Map<File, Future<String>> futures = new LinkedHashMap<File, Future<String>>();
+
+		try {
+			for( final File file : files ) {
+				futures.put( file, executor.submit( new Callable<String>() {
+					@Override
+					public String call() throws IOException {
+						return minify( getFileContents( file ), file );
+					}
+				} ) );
+			}
+
+			for( Map.Entry<File, Future<String>> entry : futures.entrySet() ) {
+				try {
+					minifiedFiles.add( ThreadHelper.getResult( entry.getValue() ) );
+
+				} catch( RuntimeException ex ) {
+					err.println( "    Could not minify file: " + entry.getKey().getAbsolutePath() );
+					throw ex;
+				}
+			}
+
+		} finally {
+			executor.shutdownNow();
+		}
+		return minifiedFiles;
+	}
+
+
+	/**
+	 * Minifies the given contents, using the {@link MinifyCache} if one has been set.
+	 *
+	 * @param contents The unminified contents. May be the combined contents of the package, or the
+	 *   contents of a single file.
+	 * @param source The file that the contents are from, or the package's minified output file if they are
+	 *   the combined contents of the package. Only used to describe the minification in flight recordings.
+	 * @return The minified contents.
+	 * @throws IOException If there is an error creating the minified contents.
+	 */
+	protected String minify( String contents, File source ) throws IOException {
+		BuildProfile.Timer timer = startTimer( BuildProfile.Phase.MINIFY );
+		BuildEvents.Minify event = new BuildEvents.Minify();
+		event.begin();
+
+		String minifiedContents = null;
+		if( minifyCache == null ) {
+			minifiedContents = compress( contents );
+
+		} else {
+			String key = MinifyCache.createKey( contents, getCompressorSignature() );
+			minifiedContents = minifyCache.get( key );
+			event.cacheHit = ( minifiedContents != null );
+			if( minifiedContents == null ) {
+				minifiedContents = compress( contents );
+				minifyCache.put( key, minifiedContents );
+			}
+		}
+
+		event.end();
+		if( event.shouldCommit() ) {
+			event.packageName = name;
+			event.path = source.getPath();
+			event.bytesIn = contents.length();
+			event.bytesOut = minifiedContents.length();
+			event.commit();
+		}
+		timer.stop( contents.length(), minifiedContents.length(), 1 );
+		return minifiedContents;
+	}
+
+
+	/**
+	 * Runs the compressor on the given contents: in a worker JVM if a {@link WorkerPool} has been set, or
+	 * otherwise in this JVM.
+	 *
+	 * @param contents The unminified contents.
+	 * @return The minified contents.
+	 * @throws IOException If there is an error creating the minified contents.
+	 */
+	private String compress( String contents ) throws IOException {
+		if( workerPool != null ) {
+			return workerPool.minify( getClass().getName(), contents, err );
+		}
+		return createMinifiedContents( contents );
+	}
+
+
+	/**
+	 * Retrieves a string which identifies the compressor (including its version) and the options
+	 * that {@link #createMinifiedContents(String)} runs it with. This is part of the key for the
+	 * {@link MinifyCache}, so that a change to the compressor or its options does not reuse cached
+	 * contents that were minified differently.
+	 *
+	 * @return The compressor signature.
+	 */
+	public abstract String getCompressorSignature();
+
+
 	/**
 	 * Creates and returns the minified contents of the Package, provided the unminified
 	 * combined file contents.
@@ -172,7 +784,22 @@ public abstract class Package {
 	 * @param combinedContents The combined contents of the files in the package.
 	 * @throws IOException If there is an error creating the minified contents.
 	 */
-	public abstract String createMinifiedContents( String combinedContents ) throws IOException;
+	public String createMinifiedContents( String combinedContents ) throws IOException {
+		Writer outputWriter = new StringWriter();
+		writeMinifiedContents( new StringReader( combinedContents ), outputWriter );
+		return outputWriter.toString();
+	}
+
+
+	/**
+	 * Minifies the unminified combined file contents of the Package from a reader into a writer, so that
+	 * the contents can be streamed through the compressor from (and to) files.
+	 *
+	 * @param inputReader The reader of the combined contents of the files in the package.
+	 * @param outputWriter The writer to write the minified contents to.
+	 * @throws IOException If there is an error reading the contents, or creating the minified contents.
+	 */
+	public abstract void writeMinifiedContents( Reader inputReader, Writer outputWriter ) throws IOException;
 
 
 	/**
@@ -180,38 +807,367 @@ public abstract class Package {
 	 * minified, and the other for the minified version. Either of these can be
 	 * turned off though in the {@link BuildOptions}.
 	 *
+	 * The contents of the Package are released once its output files are written. In low memory mode (see
+	 * {@link BuildOptions#setLowMemory}), the contents are never held in memory at all: the files are streamed
+	 * into the 'debug' output file, and through the compressor into the 'minified' output file, and the peak
+	 * heap usage while the Package was being written is reported. (Unless the Package {@link #transformsContents()
+	 * transforms the contents} of its files, which needs the contents in memory.)
+	 *
+	 * If the Package's {@link #getStampFile() stamp} shows that none of its files, its definition, the license header,
+	 * or the build options have changed since its output files were written (and that the output files have not been
+	 * changed either), the Package is skipped without any of its files being read, unless the "force" flag is set.
+	 * Otherwise, if an {@link ActionCache} has been set and it has the output of a build of the same files and
+	 * configuration, the output files are restored from the cache instead of being built.
+	 *
 	 * @param licenseHeader The license header to write into the output files.
 	 * @throws IOException If the file(s) could not be written.
 	 */
 	public void writeOutput( String licenseHeader ) throws IOException {
-		System.out.println( "Writing output for package: '" + name + "'..." );
-
-		String debugFilename = FileHelper.insertFileSuffix( filename, buildOptions.getDebugSuffix() );
-		String minifiedFilename = FileHelper.insertFileSuffix( filename, buildOptions.getMinifySuffix() );
+		String configHash = getConfigHash( licenseHeader );
+		Set<File> files = getFiles();
+		BuildStamp stamp = new BuildStamp( configHash, files );
+		File stampFile = getStampFile();
+		if( !buildOptions.getForce() && stamp.isUpToDate( stampFile, getStampedOutputFiles() ) ) {
+			out.println( "Package '" + name + "' is up to date" );
+			return;
+		}
 
-		File debugFile = new File( buildOptions.getOutputDir() + debugFilename );
-		File minifiedFile = new File( buildOptions.getOutputDir() + minifiedFilename );
+		List<File> outputFiles = getOutputFiles();
+		File debugFile = outputFiles.get( 0 );
+		File minifiedFile = outputFiles.get( 1 );
 
 		// ensure output dirs exist
-		debugFile.mkdirs();
-		minifiedFile.mkdirs();
+		debugFile.getAbsoluteFile().getParentFile().mkdirs();
+		minifiedFile.getAbsoluteFile().getParentFile().mkdirs();
 
-		// Delete the debugFile and minifiedFile before writing output, so that their generated content never accidentally
-		// gets included in the build files by including a directory or tree that encompasses them. They will be regenerated
-		// directly after.
-		debugFile.delete();
-		minifiedFile.delete();
+		Collection<File> dependencies = getDependencies();
+		String actionKey = null;
+		if( actionCache != null && !hasExtraOutput() ) {
+			List<File> keyFiles = new ArrayList<File>( files );
+			keyFiles.addAll( dependencies );
+			actionKey = ActionCache.createKey( configHash, keyFiles );
+			if( restoreOutput( actionKey ) ) {
+				stamp.write( stampFile, dependencies, getStampedOutputFiles() );
+				return;
+			}
+		}
+
+		out.println( "Writing output for package: '" + name + "'..." );
 
-		// Only create a "debug" build if the "minifyOnly" flag is not set
+		boolean lowMemory = buildOptions.getLowMemory();
+		if( lowMemory ) {
+			resetPeakHeapUsage();
+		}
+		boolean streaming = !transformsContents();  // transformed contents can't be streamed from the files
+
+		// Only create a "debug" build if the "minifyOnly" flag is not set. Otherwise, remove any debug build from a previous run
+		boolean changed;
+		long length;
 		if( !buildOptions.getMinifyOnly() ) {
-			FileHelper.setContents( debugFile, licenseHeader + getCombinedContents() );
-			System.out.println( "    Wrote: " + debugFile.getAbsolutePath() );
+			BuildEvents.OutputWrite event = new BuildEvents.OutputWrite();
+			event.begin();
+
+			if( ( buildOptions.getDebugOnly() || lowMemory ) && streaming ) {
+				// The combined contents are not needed for a minified build (or are not kept in low memory mode), so
+				// stream the files straight into the output file instead of holding the whole package in memory.
+				// Reading the files is profiled as part of writing the output
+				Set<File> sourceFiles = getBuildFiles();
+				BuildProfile.Timer timer = startTimer( BuildProfile.Phase.WRITE );
+				File tempFile = FileHelper.createTempFile( debugFile );
+				try {
+					FileHelper.concatenateFiles( tempFile, licenseHeader, sourceFiles );
+				} catch( IOException ex ) {
+					tempFile.delete();
+					throw ex;
+				}
+				length = tempFile.length();
+				changed = FileHelper.moveIfChanged( tempFile, debugFile );
+				timer.stop( length, length, 1 );
+
+			} else {
+				String combinedContents = getCombinedContents();
+				BuildProfile.Timer timer = startTimer( BuildProfile.Phase.WRITE );
+				byte[] debugBytes = ( licenseHeader + combinedContents ).getBytes();  // default encoding, as FileWriter uses
+				changed = FileHelper.setContentsIfChanged( debugFile, debugBytes );
+				length = debugBytes.length;
+				timer.stop( combinedContents.length(), length, 1 );
+			}
+			logOutput( debugFile, changed, event, length );
+
+		} else {
+			debugFile.delete();
 		}
 
-		// Only create a "minified" build if the "debugOnly" flag is not set
+		// Only create a "minified" build if the "debugOnly" flag is not set. Otherwise, remove any minified build from a previous run
 		if( !buildOptions.getDebugOnly() ) {
-			FileHelper.setContents( minifiedFile, licenseHeader + getMinifiedContents() );
-			System.out.println( "    Wrote: " + minifiedFile.getAbsolutePath() );
+			byte[] minifiedBytes;
+			if( lowMemory && streaming ) {
+				BuildEvents.OutputWrite event = new BuildEvents.OutputWrite();
+				event.begin();
+
+				changed = writeMinifiedOutputStreaming( licenseHeader, minifiedFile );
+				logOutput( minifiedFile, changed, event, minifiedFile.length() );
+				minifiedBytes = buildOptions.getGzip() ? Files.readAllBytes( minifiedFile.toPath() ) : null;  // only the (smaller) minified output
+
+			} else {
+				String minifiedContents = getMinifiedContents();
+				BuildProfile.Timer timer = startTimer( BuildProfile.Phase.WRITE );
+				BuildEvents.OutputWrite event = new BuildEvents.OutputWrite();
+				event.begin();
+
+				minifiedBytes = ( licenseHeader + minifiedContents ).getBytes();  // default encoding, as FileWriter uses
+				changed = FileHelper.setContentsIfChanged( minifiedFile, minifiedBytes );
+				timer.stop( minifiedContents.length(), minifiedBytes.length, 1 );
+				logOutput( minifiedFile, changed, event, minifiedBytes.length );
+			}
+
+			writeGzipOutput( minifiedFile, minifiedBytes, changed );
+
+		} else {
+			minifiedFile.delete();
+		}
+
+		if( hasExtraOutput() ) {
+			writeExtraOutput( licenseHeader );
+		}
+
+		// Don't cache the output if a file was modified while the package was being built, as the output may
+		// not match the contents that the key was created from
+		if( actionKey != null && !stamp.inputsChanged() ) {
+			actionCache.store( actionKey, getStampedOutputFiles() );
+		}
+		stamp.write( stampFile, dependencies, getStampedOutputFiles() );
+		reset();  // release the contents, now that they have been written
+
+		if( lowMemory ) {
+			out.println( "    Peak heap used: " + ( getPeakHeapUsage() / 1024 ) + "KB" );
+		}
+	}
+
+
+	/**
+	 * Restores the output files of the Package from the {@link ActionCache}, if it has an entry for the given key.
+	 * As when the Package is built, the output files that are not written with the current {@link BuildOptions}
+	 * are removed.
+	 *
+	 * @param actionKey The key of the Package's files and configuration.
+	 * @return True if the output files were restored, or false if there is no entry for the key.
+	 * @throws IOException If an output file could not be written.
+	 */
+	private boolean restoreOutput( String actionKey ) throws IOException {
+		List<File> stampedFiles = getStampedOutputFiles();
+		List<File> changedFiles = actionCache.restore( actionKey, stampedFiles );
+		if( changedFiles == null ) {
+			return false;
+		}
+
+		out.println( "Restoring output for package: '" + name + "' from the action cache..." );
+		for( File outputFile : stampedFiles ) {
+			out.println( ( changedFiles.contains( outputFile ) ? "    Restored: " : "    Unchanged: " ) + outputFile.getAbsolutePath() );
+		}
+
+		List<File> outputFiles = getOutputFiles();
+		if( buildOptions.getMinifyOnly() ) {
+			outputFiles.get( 0 ).delete();
+		}
+		if( buildOptions.getDebugOnly() ) {
+			outputFiles.get( 1 ).delete();
+		} else if( !buildOptions.getGzip() && changedFiles.contains( outputFiles.get( 1 ) ) ) {
+			new File( outputFiles.get( 1 ).getPath() + ".gz" ).delete();  // never leave a stale sidecar
+		}
+		return true;
+	}
+
+
+	/**
+	 * Hashes everything other than the Package's files that its output files depend on, for its {@link BuildStamp}
+	 * and its {@link ActionCache} key. Nothing that differs between machines with the same configuration (such
+	 * as the paths of the files) is included, except for the line separator and default encoding of the platform,
+	 * which the output files are written with.
+	 *
+	 * @param licenseHeader The license header that is written into the output files.
+	 * @return The hash.
+	 */
+	private String getConfigHash( String licenseHeader ) {
+		return BuildStamp.hash( BUILDER_FINGERPRINT, getClass().getName(), getCompressorSignature(), definition, licenseHeader,
+			"debugOnly=" + buildOptions.getDebugOnly(), "minifyOnly=" + buildOptions.getMinifyOnly(),
+			"minifyThreads=" + buildOptions.getMinifyThreads(), "lowMemory=" + buildOptions.getLowMemory(),
+			"gzip=" + buildOptions.getGzip(), "gzipExhaustive=" + buildOptions.getGzipExhaustive(),
+			"dedupeFiles=" + buildOptions.getDedupeFiles(), "inlineAssetLimit=" + buildOptions.getInlineAssetLimit(),
+			"flattenImports=" + buildOptions.getFlattenImports(), "optimizeCss=" + buildOptions.getOptimizeCss(),
+			"lineSeparator=" + System.getProperty( "line.separator" ), "encoding=" + Charset.defaultCharset().name() );
+	}
+
+
+	/**
+	 * Retrieves the output files that the Package writes with the current {@link BuildOptions}, which are
+	 * recorded in its {@link BuildStamp}.
+	 *
+	 * @return The output files.
+	 */
+	private List<File> getStampedOutputFiles() {
+		List<File> outputFiles = getOutputFiles();
+		List<File> stampedFiles = new ArrayList<File>();
+		if( !buildOptions.getMinifyOnly() ) {
+			stampedFiles.add( outputFiles.get( 0 ) );
+		}
+		if( !buildOptions.getDebugOnly() ) {
+			stampedFiles.add( outputFiles.get( 1 ) );
+			if( buildOptions.getGzip() ) {
+				stampedFiles.add( new File( outputFiles.get( 1 ).getPath() + ".gz" ) );
+			}
+		}
+		stampedFiles.addAll( getExtraOutputFiles() );
+		return stampedFiles;
+	}
+
+
+	/**
+	 * Streams the files of the Package through the compressor, into the 'minified' output file, without holding
+	 * the combined or minified contents of the Package in memory. Neither the {@link MinifyCache} nor per-file
+	 * minification (--minifyThreads) is used, as both need the contents in memory.
+	 *
+	 * @param licenseHeader The license header to write first.
+	 * @param minifiedFile The output file.
+	 * @return True if the output file was written, or false if its contents were unchanged.
+	 * @throws IOException If a file could not be read or minified, or the output file could not be written.
+	 */
+	private boolean writeMinifiedOutputStreaming( String licenseHeader, File minifiedFile ) throws IOException {
+		Set<File> files = getBuildFiles();
+
+		// Reading and writing are streamed through the compressor, so they are profiled as part of minifying
+		BuildProfile.Timer timer = startTimer( BuildProfile.Phase.MINIFY );
+		File tempFile = FileHelper.createTempFile( minifiedFile );
+		try {
+			Reader input = new CombinedFilesReader( files );
+			try {
+				Writer output = new BufferedWriter( new FileWriter( tempFile ) );  // default encoding, as setContents() uses
+				try {
+					output.write( licenseHeader );
+					writeMinifiedContents( input, output );
+				} finally {
+					output.close();
+				}
+			} finally {
+				input.close();
+			}
+		} catch( IOException | RuntimeException ex ) {
+			tempFile.delete();
+			throw ex;
+		}
+
+		long length = tempFile.length();
+		boolean changed = FileHelper.moveIfChanged( tempFile, minifiedFile );
+		timer.stop( 0, length, files.size() );
+		return changed;
+	}
+
+
+	/**
+	 * Writes an output file of the Package, if its contents have changed, and reports it.
+	 *
+	 * @param outputFile The output file.
+	 * @param bytes The contents of the output file.
+	 * @return True if the output file was written, or false if its contents were unchanged.
+	 * @throws IOException If the file could not be written.
+	 */
+	protected boolean writeOutputFile( File outputFile, byte[] bytes ) throws IOException {
+		BuildEvents.OutputWrite event = new BuildEvents.OutputWrite();
+		event.begin();
+
+		boolean changed = FileHelper.setContentsIfChanged( outputFile, bytes );
+		logOutput( outputFile, changed, event, bytes.length );
+		return changed;
+	}
+
+
+	/**
+	 * Writes the precompressed .gz sidecar file for an output file, if the "gzip" flag is set in the {@link BuildOptions}.
+	 * If the output file is unchanged and its sidecar is up to date, the sidecar is not compressed again. If the flag is
+	 * not set, any sidecar from a previous run is removed when the output file changes, so that a stale sidecar is never
+	 * served in place of the new output.
+	 *
+	 * @param outputFile The output file.
+	 * @param outputBytes The contents of the output file.
+	 * @param outputChanged True if the output file was just written, false if its contents were unchanged.
+	 * @throws IOException If the sidecar could not be written.
+	 */
+	protected void writeGzipOutput( File outputFile, byte[] outputBytes, boolean outputChanged ) throws IOException {
+		File gzipFile = new File( outputFile.getPath() + ".gz" );
+
+		if( !buildOptions.getGzip() ) {
+			if( outputChanged ) {
+				gzipFile.delete();
+			}
+			return;
+		}
+
+		BuildEvents.OutputWrite event = new BuildEvents.OutputWrite();
+		event.begin();
+
+		boolean changed = false;
+		long length = 0;
+		if( outputChanged || !gzipFile.isFile() || gzipFile.lastModified() < outputFile.lastModified() ) {
+			BuildProfile.Timer timer = startTimer( BuildProfile.Phase.WRITE );
+			byte[] gzipBytes = new GzipCompressor( buildOptions.getGzipExhaustive() ).compress( outputBytes );
+			changed = FileHelper.setContentsIfChanged( gzipFile, gzipBytes );
+			length = gzipBytes.length;
+			timer.stop( outputBytes.length, length, 1 );
+		}
+		logOutput( gzipFile, changed, event, length );
+	}
+
+
+	/**
+	 * Resets the peak usage of the JVM's heap memory pools, so that the peak while the Package is being written
+	 * can be measured. The reset is JVM-wide, which is why packages are only built one at a time in low memory
+	 * mode (see {@link Project#writeOutput(List)}).
+	 */
+	private static void resetPeakHeapUsage() {
+		for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+			if( pool.getType() == MemoryType.HEAP ) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+
+	/**
+	 * Retrieves the peak heap used since {@link #resetPeakHeapUsage()}: the sum of the peak usage of each heap
+	 * memory pool. This is the JVM's heap used, including garbage which has not been collected yet, and not the
+	 * bytes that the Package retains. As the pools may have peaked at different times, it is an upper bound of
+	 * the heap used at any one time (and so of the bytes retained) while the Package was written.
+	 *
+	 * @return The peak heap usage, in bytes.
+	 */
+	private static long getPeakHeapUsage() {
+		long peakUsage = 0;
+		for( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+			if( pool.getType() == MemoryType.HEAP ) {
+				peakUsage += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peakUsage;
+	}
+
+
+	/**
+	 * Reports an output file of the Package as written, or as unchanged, and ends its flight recorder event.
+	 *
+	 * @param outputFile The output file.
+	 * @param changed True if the file was written, false if its contents were unchanged (and it was left untouched).
+	 * @param event The event of the write, which was begun before the write.
+	 * @param length The length of the file's contents, or 0 if they were not compared.
+	 */
+	private void logOutput( File outputFile, boolean changed, BuildEvents.OutputWrite event, long length ) {
+		event.end();
+		if( event.shouldCommit() ) {
+			event.packageName = name;
+			event.path = outputFile.getPath();
+			event.bytes = length;
+			event.changed = changed;
+			event.commit();
 		}
+		out.println( ( changed ? "    Wrote: " : "    Unchanged: " ) + outputFile.getAbsolutePath() );
 	}
 }